@@ -1,6 +1,10 @@
 package com.together.app;
 
 import com.getcapacitor.BridgeActivity;
+import com.together.app.plugins.HeartbeatPlugin;
+import com.together.app.plugins.ImageCompressorPlugin;
+import com.together.app.plugins.StartupTracePlugin;
+import com.together.app.plugins.UploaderPlugin;
 import com.together.app.plugins.VideoCompressorPlugin;
 import com.together.app.plugins.WidgetPlugin;
 import android.os.Bundle;
@@ -9,9 +13,16 @@ import androidx.core.view.WindowCompat;
 public class MainActivity extends BridgeActivity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        StartupTrace.mark(StartupTrace.ACTIVITY_CREATE);
         registerPlugin(VideoCompressorPlugin.class);
+        registerPlugin(ImageCompressorPlugin.class);
+        registerPlugin(UploaderPlugin.class);
         registerPlugin(WidgetPlugin.class);
+        registerPlugin(StartupTracePlugin.class);
+        registerPlugin(HeartbeatPlugin.class);
+        StartupTrace.mark(StartupTrace.PLUGINS_REGISTERED);
         super.onCreate(savedInstanceState);
+        StartupTrace.mark(StartupTrace.BRIDGE_READY);
         WindowCompat.setDecorFitsSystemWindows(getWindow(), false);
     }
 }
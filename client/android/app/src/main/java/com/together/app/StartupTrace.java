@@ -0,0 +1,59 @@
+package com.together.app;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 冷启动打点：记录进程启动、Application.onCreate、插件注册、Bridge 就绪
+ * 和 Web 首帧的时间 (elapsedRealtime)，供 JS 读取以区分原生和 WebView 的耗时
+ */
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    public static final String PROCESS_START = "process_start";
+    public static final String APPLICATION_CREATE_START = "application_create_start";
+    public static final String APPLICATION_CREATE_END = "application_create_end";
+    public static final String ACTIVITY_CREATE = "activity_create";
+    public static final String PLUGINS_REGISTERED = "plugins_registered";
+    public static final String BRIDGE_READY = "bridge_ready";
+    public static final String FIRST_WEB_PAINT = "first_web_paint";
+
+    private static final Map<String, Long> marks = new LinkedHashMap<>();
+
+    static {
+        marks.put(PROCESS_START, Process.getStartElapsedRealtime());
+    }
+
+    private StartupTrace() {
+    }
+
+    /**
+     * 记录一个时间点；同名打点只保留第一次（即冷启动时的值）
+     */
+    public static void mark(String name) {
+        mark(name, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 记录一个发生在 elapsedRealtime 时刻的时间点，用于 Web 层带回的时间
+     */
+    public static synchronized void mark(String name, long elapsedRealtime) {
+        if (marks.containsKey(name)) {
+            return;
+        }
+        marks.put(name, elapsedRealtime);
+        Log.d(TAG, name + " at +" + (elapsedRealtime - marks.get(PROCESS_START)) + "ms");
+    }
+
+    public static synchronized long getProcessStart() {
+        return marks.get(PROCESS_START);
+    }
+
+    public static synchronized Map<String, Long> getMarks() {
+        return new LinkedHashMap<>(marks);
+    }
+}
@@ -3,24 +3,46 @@ package com.together.app;
 import android.app.Application;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.content.Context;
 import android.media.AudioAttributes;
 import android.os.Build;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class TogetherApplication extends Application {
     public static final String CHANNEL_ID_HEARTBEAT = "heartbeat_channel";
     public static final String CHANNEL_ID_DEFAULT = "default_channel";
 
+    // Non-critical startup work runs here so it stays off the cold start path
+    private static final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private static boolean channelsCreated;
+
     @Override
     public void onCreate() {
+        StartupTrace.mark(StartupTrace.APPLICATION_CREATE_START);
         super.onCreate();
-        createNotificationChannels();
+        backgroundExecutor.execute(() -> ensureNotificationChannels(this));
+        StartupTrace.mark(StartupTrace.APPLICATION_CREATE_END);
     }
 
-    private void createNotificationChannels() {
+    public static ExecutorService getBackgroundExecutor() {
+        return backgroundExecutor;
+    }
+
+    /**
+     * Creates the notification channels if they do not exist yet. Anything that
+     * posts a notification should call this first, since channel creation is
+     * deferred at startup and may not have run.
+     */
+    public static synchronized void ensureNotificationChannels(Context context) {
+        if (channelsCreated) {
+            return;
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationManager manager = getSystemService(NotificationManager.class);
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
 
             // Heartbeat channel with vibration
             NotificationChannel heartbeatChannel = new NotificationChannel(
@@ -44,5 +66,6 @@ public class TogetherApplication extends Application {
             defaultChannel.enableVibration(false);
             manager.createNotificationChannel(defaultChannel);
         }
+        channelsCreated = true;
     }
 }
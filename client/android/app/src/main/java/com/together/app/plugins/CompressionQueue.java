@@ -0,0 +1,371 @@
+package com.together.app.plugins;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Small on-disk queue of video compression jobs.
+ *
+ * Each job is stored as one JSON file under the app's files dir so that a job
+ * (and its result) survives the process being killed mid-transcode. The worker
+ * picks jobs up by id, and a later request for the same input and settings is
+ * attached to the existing job (or answered from its result) instead of
+ * transcoding again. Finished jobs nobody asks for again are pruned, with
+ * their output files, after {@link #FINISHED_JOB_TTL_MS}.
+ */
+public class CompressionQueue {
+    private static final String TAG = "CompressionQueue";
+    private static final String DIR_NAME = "compression_queue";
+    /** Finished jobs older than this are pruned even if never acknowledged. */
+    private static final long FINISHED_JOB_TTL_MS = 7L * 24 * 60 * 60 * 1000;
+
+    public static final String STATE_QUEUED = "queued";
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_SUCCEEDED = "succeeded";
+    public static final String STATE_FAILED = "failed";
+
+    /**
+     * Notified on the worker thread when a job changes state or makes progress.
+     */
+    public interface Listener {
+        void onJobUpdated(Job job);
+
+        void onJobProgress(Job job, int percent);
+
+        void onJobThrottled(Job job, CompressionThrottle.Decision decision);
+    }
+
+    private static CompressionQueue instance;
+
+    private final File dir;
+    private volatile Listener listener;
+
+    private CompressionQueue(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Failed to create queue dir: " + dir);
+        }
+    }
+
+    public static synchronized CompressionQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new CompressionQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * A queued job. The worker thread and the throttle listener (a binder thread) both
+     * change the same instance, so mutable fields are written and serialized while
+     * holding the job's monitor.
+     */
+    public static class Job {
+        public final String id;
+        public final String inputUri;
+        public final String outputPath;
+        public final VideoCompressor.Settings settings;
+        public final long createdAt;
+        public final boolean lowPriority;
+        /** Optional low-resolution rendition encoded from the same decode, or null. */
+        public final String previewPath;
+        public final VideoCompressor.Settings previewSettings;
+        public String state = STATE_QUEUED;
+        public long size;
+        public long previewSize;
+        public double duration;
+        public String error;
+        public boolean delivered;
+        /** Reason of the last throttle decision applied to this job, if any. */
+        public String throttleReason;
+
+        Job(String id, String inputUri, String outputPath, VideoCompressor.Settings settings, long createdAt,
+                boolean lowPriority, String previewPath, VideoCompressor.Settings previewSettings) {
+            this.id = id;
+            this.inputUri = inputUri;
+            this.outputPath = outputPath;
+            this.settings = settings;
+            this.createdAt = createdAt;
+            this.lowPriority = lowPriority;
+            this.previewPath = previewPath;
+            this.previewSettings = previewSettings;
+        }
+
+        public boolean isFinished() {
+            return STATE_SUCCEEDED.equals(state) || STATE_FAILED.equals(state);
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("inputUri", inputUri);
+            json.put("outputPath", outputPath);
+            putSettings(json, settings);
+            if (previewPath != null) {
+                JSONObject preview = new JSONObject();
+                preview.put("path", previewPath);
+                preview.put("size", previewSize);
+                putSettings(preview, previewSettings);
+                json.put("preview", preview);
+            }
+            json.put("createdAt", createdAt);
+            json.put("lowPriority", lowPriority);
+            json.put("state", state);
+            json.put("size", size);
+            json.put("duration", duration);
+            json.put("error", error);
+            json.put("delivered", delivered);
+            json.put("throttleReason", throttleReason);
+            return json;
+        }
+
+        static Job fromJson(JSONObject json) throws JSONException {
+            JSONObject preview = json.optJSONObject("preview");
+            Job job = new Job(
+                json.getString("id"),
+                json.getString("inputUri"),
+                json.getString("outputPath"),
+                readSettings(json),
+                json.getLong("createdAt"),
+                json.optBoolean("lowPriority"),
+                preview != null ? preview.getString("path") : null,
+                preview != null ? readSettings(preview) : null
+            );
+            if (preview != null) {
+                job.previewSize = preview.optLong("size");
+            }
+            job.state = json.optString("state", STATE_QUEUED);
+            job.size = json.optLong("size");
+            job.duration = json.optDouble("duration", 0);
+            job.error = json.isNull("error") ? null : json.optString("error");
+            job.delivered = json.optBoolean("delivered");
+            job.throttleReason = json.isNull("throttleReason") ? null : json.optString("throttleReason");
+            return job;
+        }
+
+        private static void putSettings(JSONObject json, VideoCompressor.Settings settings) throws JSONException {
+            json.put("maxWidth", settings.maxWidth);
+            json.put("maxHeight", settings.maxHeight);
+            json.put("videoBitrate", settings.videoBitrate);
+            json.put("audioBitrate", settings.audioBitrate);
+            json.put("frameRate", settings.frameRate);
+        }
+
+        private static VideoCompressor.Settings readSettings(JSONObject json) throws JSONException {
+            return new VideoCompressor.Settings(
+                json.getInt("maxWidth"),
+                json.getInt("maxHeight"),
+                json.getInt("videoBitrate"),
+                json.getInt("audioBitrate"),
+                json.optInt("frameRate", VideoCompressor.DEFAULT_FRAME_RATE)
+            );
+        }
+    }
+
+    public Job enqueue(String inputUri, File outputFile, VideoCompressor.Settings settings,
+            boolean lowPriority) throws IOException {
+        return enqueue(inputUri, outputFile, settings, null, null, lowPriority);
+    }
+
+    /**
+     * Queues a job that also writes a preview rendition; {@code previewFile} may be null for none.
+     */
+    public synchronized Job enqueue(String inputUri, File outputFile, VideoCompressor.Settings settings,
+            File previewFile, VideoCompressor.Settings previewSettings, boolean lowPriority) throws IOException {
+        Job job = new Job(
+            UUID.randomUUID().toString(),
+            inputUri,
+            outputFile.getAbsolutePath(),
+            settings,
+            System.currentTimeMillis(),
+            lowPriority,
+            previewFile != null ? previewFile.getAbsolutePath() : null,
+            previewFile != null ? previewSettings : null
+        );
+        write(job);
+        return job;
+    }
+
+    public synchronized Job get(String id) {
+        File file = fileFor(id);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Job.fromJson(new JSONObject(readFile(file)));
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Dropping unreadable job " + id, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Finds an orphaned job that already covers this request: one still queued or running,
+     * or one that succeeded and whose outputs are still on disk, that no caller has been
+     * handed yet. Jobs in {@code claimed} (already awaited) and delivered jobs belong to
+     * another caller, which deletes the output once done with it, so they are not shared.
+     * Failed jobs are never reused, and a normal-priority request does not wait behind a
+     * low-priority job.
+     */
+    public synchronized Job findReusable(String inputUri, VideoCompressor.Settings settings,
+            VideoCompressor.Settings previewSettings, boolean lowPriority, Collection<String> claimed) {
+        for (Job job : list()) {
+            if (job.delivered || claimed.contains(job.id)
+                    || !job.inputUri.equals(inputUri)
+                    || !job.settings.sameAs(settings)
+                    || (previewSettings == null ? job.previewSettings != null : !previewSettings.sameAs(job.previewSettings))
+                    || (job.lowPriority && !lowPriority)
+                    || STATE_FAILED.equals(job.state)) {
+                continue;
+            }
+            if (STATE_SUCCEEDED.equals(job.state) && !outputsExist(job)) {
+                continue;
+            }
+            return job;
+        }
+        return null;
+    }
+
+    private static boolean outputsExist(Job job) {
+        return new File(job.outputPath).isFile() && (job.previewPath == null || new File(job.previewPath).isFile());
+    }
+
+    /**
+     * Returns all jobs ordered by creation time, pruning stale finished ones.
+     */
+    public synchronized List<Job> list() {
+        List<Job> jobs = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return jobs;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            Job job = get(file.getName().substring(0, file.getName().length() - 5));
+            if (job == null) {
+                continue;
+            }
+            if (job.isFinished() && now - job.createdAt > FINISHED_JOB_TTL_MS) {
+                // Never picked up again: the outputs are abandoned too
+                deleteOutputs(job);
+                remove(job.id);
+                continue;
+            }
+            jobs.add(job);
+        }
+        Collections.sort(jobs, (a, b) -> Long.compare(a.createdAt, b.createdAt));
+        return jobs;
+    }
+
+    public void update(Job job) {
+        persist(job);
+        Listener current = listener;
+        if (current != null) {
+            current.onJobUpdated(job);
+        }
+    }
+
+    public void reportProgress(Job job, int percent) {
+        Listener current = listener;
+        if (current != null) {
+            current.onJobProgress(job, percent);
+        }
+    }
+
+    public void reportThrottle(Job job, CompressionThrottle.Decision decision) {
+        synchronized (job) {
+            job.throttleReason = decision.reason;
+        }
+        persist(job);
+        Listener current = listener;
+        if (current != null) {
+            current.onJobThrottled(job, decision);
+        }
+    }
+
+    /**
+     * Removes the job record. The output file is left for the caller to manage.
+     */
+    public synchronized void remove(String id) {
+        fileFor(id).delete();
+    }
+
+    /**
+     * Deletes the job's output files, e.g. once they have been uploaded or abandoned.
+     */
+    public static void deleteOutputs(Job job) {
+        deleteFile(job.outputPath);
+        deleteFile(job.previewPath);
+    }
+
+    private static void deleteFile(String path) {
+        if (path == null) {
+            return;
+        }
+        File file = new File(path);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete output: " + path);
+        }
+    }
+
+    private synchronized void persist(Job job) {
+        try {
+            synchronized (job) {
+                write(job);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist job " + job.id, e);
+        }
+    }
+
+    private File fileFor(String id) {
+        return new File(dir, id + ".json");
+    }
+
+    private void write(Job job) throws IOException {
+        File target = fileFor(job.id);
+        File temp = new File(dir, job.id + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(job.toJson().toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (JSONException e) {
+            throw new IOException("Failed to serialize job " + job.id, e);
+        }
+        if (!temp.renameTo(target)) {
+            throw new IOException("Failed to commit job " + job.id);
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(data, 0, offset, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.together.app.plugins;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Decides how hard video compression may push the SoC.
+ *
+ * Long hardware transcodes heat the device until the OS throttles it, at which
+ * point throughput collapses. Watching {@link PowerManager} thermal status and
+ * battery / power-save state lets us slow down early (lower operating rate and
+ * frame rate) and hold back low-priority jobs, so throughput stays predictable.
+ */
+public class CompressionThrottle {
+    private static final String TAG = "CompressionThrottle";
+    private static final int LOW_BATTERY_PERCENT = 15;
+    private static final long REEVALUATE_INTERVAL_MS = 5000;
+
+    public static final String LEVEL_NORMAL = "normal";
+    public static final String LEVEL_REDUCED = "reduced";
+    public static final String LEVEL_SEVERE = "severe";
+
+    public interface Listener {
+        void onDecisionChanged(Decision decision);
+    }
+
+    public static class Decision {
+        public final String level;
+        /** Upper bound for the output frame rate. */
+        public final int frameRate;
+        /** Frames per second the codecs may process; 0 means unrestricted. */
+        public final int operatingRate;
+        public final boolean pauseLowPriority;
+        public final String reason;
+
+        Decision(String level, int frameRate, int operatingRate, boolean pauseLowPriority, String reason) {
+            this.level = level;
+            this.frameRate = frameRate;
+            this.operatingRate = operatingRate;
+            this.pauseLowPriority = pauseLowPriority;
+            this.reason = reason;
+        }
+
+        boolean sameAs(Decision other) {
+            return other != null
+                && level.equals(other.level)
+                && frameRate == other.frameRate
+                && operatingRate == other.operatingRate
+                && pauseLowPriority == other.pauseLowPriority
+                && reason.equals(other.reason);
+        }
+
+        @Override
+        public String toString() {
+            return level + "(" + reason + ", fps=" + frameRate + ", rate=" + operatingRate
+                + ", pauseLow=" + pauseLowPriority + ")";
+        }
+    }
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private final BatteryManager batteryManager;
+    private volatile Listener listener;
+    private volatile Decision current;
+    private volatile long lastEvaluatedAt;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    public CompressionThrottle(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = this.context.getSystemService(PowerManager.class);
+        this.batteryManager = this.context.getSystemService(BatteryManager.class);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts listening for thermal status changes so decisions react immediately.
+     */
+    public void start() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener == null) {
+            thermalListener = status -> refresh();
+            powerManager.addThermalStatusListener(Runnable::run, thermalListener);
+        }
+    }
+
+    public void stop() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+    }
+
+    /**
+     * Returns the latest decision, re-evaluating battery state every few seconds.
+     * Cheap enough to call once per frame.
+     */
+    public Decision current() {
+        if (current == null || System.currentTimeMillis() - lastEvaluatedAt > REEVALUATE_INTERVAL_MS) {
+            return refresh();
+        }
+        return current;
+    }
+
+    public synchronized Decision refresh() {
+        Decision decision = evaluate();
+        lastEvaluatedAt = System.currentTimeMillis();
+        if (!decision.sameAs(current)) {
+            Log.d(TAG, "Throttle decision: " + decision);
+            current = decision;
+            Listener l = listener;
+            if (l != null) {
+                l.onDecisionChanged(decision);
+            }
+        }
+        return current;
+    }
+
+    private Decision evaluate() {
+        int thermalStatus = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+            ? powerManager.getCurrentThermalStatus()
+            : 0;
+
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+            return new Decision(LEVEL_SEVERE, 24, 24, true, "thermal_severe");
+        }
+        if (thermalStatus == PowerManager.THERMAL_STATUS_MODERATE) {
+            return new Decision(LEVEL_REDUCED, 30, 60, true, "thermal_moderate");
+        }
+        if (thermalStatus == PowerManager.THERMAL_STATUS_LIGHT) {
+            return new Decision(LEVEL_REDUCED, 30, 120, false, "thermal_light");
+        }
+        if (powerManager.isPowerSaveMode()) {
+            return new Decision(LEVEL_REDUCED, 30, 60, true, "power_save");
+        }
+
+        int battery = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+        if (battery > 0 && battery <= LOW_BATTERY_PERCENT && !batteryManager.isCharging()) {
+            return new Decision(LEVEL_REDUCED, 30, 60, true, "battery_low");
+        }
+
+        return new Decision(LEVEL_NORMAL, VideoCompressor.DEFAULT_FRAME_RATE, 0, false, "none");
+    }
+}
@@ -0,0 +1,327 @@
+package com.together.app.plugins;
+
+import android.app.Notification;
+import android.content.Context;
+import android.content.pm.ServiceInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.together.app.R;
+import com.together.app.TogetherApplication;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queued video compression jobs as foreground work.
+ *
+ * Jobs are chained on a single unique work name so only one job transcodes at
+ * a time. WorkManager persists the chain, so a job interrupted
+ * by process death is started again from scratch on the next launch.
+ *
+ * Low-priority jobs run on their own chain that waits for a healthy battery and
+ * backs off while {@link CompressionThrottle} asks for them to be paused, so
+ * they never hold up user-initiated compressions. Both chains share one
+ * transcode slot: a low-priority job only starts when the slot is free, and
+ * gives it up (and is retried later) as soon as a normal job is waiting or the
+ * throttle asks low-priority work to pause.
+ */
+public class CompressionWorker extends Worker {
+    private static final String TAG = "CompressionWorker";
+    private static final String UNIQUE_WORK_NAME = "video_compression";
+    private static final String UNIQUE_WORK_NAME_LOW = "video_compression_low";
+    private static final long LOW_PRIORITY_BACKOFF_MINUTES = 2;
+    private static final String KEY_JOB_ID = "jobId";
+
+    /** One hardware transcode at a time across both chains. */
+    private static final Semaphore TRANSCODE_SLOT = new Semaphore(1);
+    private static final AtomicInteger waitingNormalJobs = new AtomicInteger();
+    /** The running low-priority compressor, so a normal job can make it yield. */
+    private static volatile VideoCompressor runningLowPriority;
+
+    private CompressionQueue.Job job;
+    private int notifiedPercent;
+    /** Whether the worker runs as a foreground service, i.e. has a notification to update. */
+    private volatile boolean foreground;
+    private volatile VideoCompressor compressor;
+    /** Set when a low-priority job is stopped to be retried later rather than failed. */
+    private volatile boolean yielded;
+
+    public CompressionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a job that has already been written to the {@link CompressionQueue}.
+     */
+    public static void schedule(Context context, String jobId, boolean lowPriority) {
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(CompressionWorker.class)
+            .setInputData(new Data.Builder().putString(KEY_JOB_ID, jobId).build())
+            .addTag(jobId);
+        if (lowPriority) {
+            // Expedited work cannot carry battery constraints
+            builder.setConstraints(new Constraints.Builder().setRequiresBatteryNotLow(true).build())
+                .setBackoffCriteria(BackoffPolicy.LINEAR, LOW_PRIORITY_BACKOFF_MINUTES, TimeUnit.MINUTES);
+        } else {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(
+            lowPriority ? UNIQUE_WORK_NAME_LOW : UNIQUE_WORK_NAME,
+            ExistingWorkPolicy.APPEND_OR_REPLACE,
+            builder.build()
+        );
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String jobId = getInputData().getString(KEY_JOB_ID);
+        CompressionQueue queue = CompressionQueue.getInstance(getApplicationContext());
+        job = jobId != null ? queue.get(jobId) : null;
+        if (job == null) {
+            Log.w(TAG, "Job not found: " + jobId);
+            // Failing would cancel every job appended behind this one on the chain
+            return Result.success();
+        }
+        if (job.isFinished()) {
+            return Result.success();
+        }
+
+        CompressionThrottle throttle = new CompressionThrottle(getApplicationContext());
+        CompressionThrottle.Decision decision = throttle.refresh();
+        if (job.lowPriority && decision.pauseLowPriority) {
+            Log.d(TAG, "Pausing low-priority job " + job.id + ": " + decision);
+            return pause(queue, decision);
+        }
+
+        if (!acquireTranscodeSlot()) {
+            Log.d(TAG, "Deferring low-priority job " + job.id + " behind a normal job");
+            return Result.retry();
+        }
+        try {
+            return transcode(queue, throttle, decision);
+        } finally {
+            TRANSCODE_SLOT.release();
+        }
+    }
+
+    /**
+     * Normal jobs wait for the slot and make a running low-priority job yield it;
+     * low-priority jobs only take a free slot.
+     */
+    private boolean acquireTranscodeSlot() {
+        if (job.lowPriority) {
+            return waitingNormalJobs.get() == 0 && TRANSCODE_SLOT.tryAcquire();
+        }
+        waitingNormalJobs.incrementAndGet();
+        try {
+            VideoCompressor lowPriority = runningLowPriority;
+            if (lowPriority != null) {
+                lowPriority.cancel();
+            }
+            TRANSCODE_SLOT.acquireUninterruptibly();
+            return true;
+        } finally {
+            waitingNormalJobs.decrementAndGet();
+        }
+    }
+
+    private Result pause(CompressionQueue queue, CompressionThrottle.Decision decision) {
+        synchronized (job) {
+            job.state = CompressionQueue.STATE_QUEUED;
+        }
+        queue.reportThrottle(job, decision);
+        return Result.retry();
+    }
+
+    private Result transcode(CompressionQueue queue, CompressionThrottle throttle,
+            CompressionThrottle.Decision decision) {
+        // Background start restrictions may refuse promotion; keep going as normal work.
+        foreground = promoteToForeground(0);
+
+        synchronized (job) {
+            job.state = CompressionQueue.STATE_RUNNING;
+        }
+        queue.update(job);
+
+        File outputFile = new File(job.outputPath);
+        File previewFile = job.previewPath != null ? new File(job.previewPath) : null;
+        // A previous attempt may have been killed part-way through writing.
+        deleteStale(outputFile);
+        deleteStale(previewFile);
+
+        VideoCompressor compressor = new VideoCompressor(getApplicationContext());
+        this.compressor = compressor;
+        // Runs on the thermal-status binder thread; the queue serializes job changes on the job
+        throttle.setListener(d -> {
+            queue.reportThrottle(job, d);
+            if (job.lowPriority && d.pauseLowPriority) {
+                Log.d(TAG, "Pausing running low-priority job " + job.id + ": " + d);
+                yielded = true;
+                compressor.cancel();
+            }
+        });
+        if (!CompressionThrottle.LEVEL_NORMAL.equals(decision.level)) {
+            queue.reportThrottle(job, decision);
+        }
+        throttle.start();
+        if (job.lowPriority) {
+            runningLowPriority = compressor;
+            // A normal job may have queued up between taking the slot and publishing the compressor
+            if (waitingNormalJobs.get() > 0) {
+                compressor.cancel();
+            }
+        }
+
+        try {
+            List<VideoCompressor.Rendition> renditions = new ArrayList<>();
+            renditions.add(new VideoCompressor.Rendition(outputFile, capFrameRate(job.settings, decision)));
+            if (previewFile != null) {
+                // Encoded from the same decode as the main output
+                renditions.add(new VideoCompressor.Rendition(previewFile, capFrameRate(job.previewSettings, decision)));
+            }
+
+            compressor.setThrottle(throttle);
+            compressor.setProgressListener(percent -> {
+                queue.reportProgress(job, percent);
+                if (foreground && percent - notifiedPercent >= 5) {
+                    notifiedPercent = percent;
+                    foreground = promoteToForeground(percent);
+                }
+            });
+            List<VideoCompressor.Result> results = compressor.compress(Uri.parse(job.inputUri), renditions);
+            VideoCompressor.Result result = results.get(0);
+
+            synchronized (job) {
+                job.state = CompressionQueue.STATE_SUCCEEDED;
+                job.size = result.size;
+                job.duration = result.duration;
+                if (previewFile != null) {
+                    job.previewSize = results.get(1).size;
+                }
+            }
+            queue.update(job);
+            Log.d(TAG, "Job " + job.id + " complete: size=" + result.size);
+            return Result.success();
+        } catch (Exception e) {
+            outputFile.delete();
+            if (previewFile != null) {
+                previewFile.delete();
+            }
+            if (job.lowPriority && (yielded || waitingNormalJobs.get() > 0) && e instanceof InterruptedIOException) {
+                // Stopped to make way, not failed; start again from scratch later
+                Log.d(TAG, "Low-priority job " + job.id + " yielded");
+                synchronized (job) {
+                    job.state = CompressionQueue.STATE_QUEUED;
+                }
+                queue.update(job);
+                return Result.retry();
+            }
+            if (isStopped()) {
+                // WorkManager runs the job again when its constraints allow
+                synchronized (job) {
+                    job.state = CompressionQueue.STATE_QUEUED;
+                }
+                queue.update(job);
+                return Result.retry();
+            }
+            Log.e(TAG, "Job " + job.id + " failed", e);
+            synchronized (job) {
+                job.state = CompressionQueue.STATE_FAILED;
+                job.error = e.getMessage();
+            }
+            queue.update(job);
+            // The failure is recorded on the job; keep the chain going for the jobs behind it
+            return Result.success();
+        } finally {
+            throttle.stop();
+            if (runningLowPriority == compressor) {
+                runningLowPriority = null;
+            }
+            this.compressor = null;
+        }
+    }
+
+    @Override
+    public void onStopped() {
+        VideoCompressor current = compressor;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Promotes the worker to a foreground service, or updates its notification. A refused
+     * background start surfaces in the returned future, so wait on it; returns false then.
+     */
+    private boolean promoteToForeground(int percent) {
+        try {
+            setForegroundAsync(createForegroundInfo(percent)).get();
+            return true;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Unable to run in foreground", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static VideoCompressor.Settings capFrameRate(VideoCompressor.Settings settings,
+            CompressionThrottle.Decision decision) {
+        return decision.frameRate < settings.frameRate ? settings.withFrameRate(decision.frameRate) : settings;
+    }
+
+    private static void deleteStale(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete stale output: " + file);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return createForegroundInfo(0);
+    }
+
+    private ForegroundInfo createForegroundInfo(int percent) {
+        Context context = getApplicationContext();
+        TogetherApplication.ensureNotificationChannels(context);
+        Notification notification = new NotificationCompat.Builder(context, TogetherApplication.CHANNEL_ID_DEFAULT)
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentTitle(context.getString(R.string.compression_notification_title))
+            .setContentText(context.getString(R.string.compression_notification_progress, percent))
+            .setProgress(100, percent, false)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .setSilent(true)
+            .build();
+
+        int notificationId = job != null ? job.id.hashCode() : UNIQUE_WORK_NAME.hashCode();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.VANILLA_ICE_CREAM) {
+            return new ForegroundInfo(notificationId, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PROCESSING);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(notificationId, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(notificationId, notification);
+    }
+}
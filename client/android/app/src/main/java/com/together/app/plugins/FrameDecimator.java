@@ -0,0 +1,57 @@
+package com.together.app.plugins;
+
+/**
+ * Picks which decoded frames to render so the output approaches a target frame rate.
+ *
+ * Frames are chosen by presentation time against a fixed grid of
+ * {@code 1 / targetFrameRate} slots, so 60, 120 or 240 fps sources are thinned
+ * evenly and sources at or below the target keep every frame.
+ */
+class FrameDecimator {
+    /** Slack for container timestamp rounding, e.g. 29.97 / 59.94 fps sources. */
+    private static final long TOLERANCE_US = 1000;
+
+    private final int targetFrameRate;
+    private long anchorUs;
+    private long slot;
+    private boolean started;
+
+    FrameDecimator(int targetFrameRate) {
+        this.targetFrameRate = targetFrameRate;
+    }
+
+    /**
+     * Returns whether the frame at {@code presentationTimeUs} should be rendered.
+     * Must be called with frames in presentation order.
+     */
+    boolean shouldRender(long presentationTimeUs) {
+        if (targetFrameRate <= 0) {
+            return true;
+        }
+        if (!started || presentationTimeUs < anchorUs) {
+            start(presentationTimeUs);
+            return true;
+        }
+        long nextFrameUs = slotTime(slot + 1);
+        if (presentationTimeUs < nextFrameUs - TOLERANCE_US) {
+            return false;
+        }
+        slot++;
+        // Re-anchor after a gap in the source so we do not render a burst to catch up
+        if (presentationTimeUs >= slotTime(slot + 1) - TOLERANCE_US) {
+            start(presentationTimeUs);
+        }
+        return true;
+    }
+
+    private void start(long presentationTimeUs) {
+        anchorUs = presentationTimeUs;
+        slot = 0;
+        started = true;
+    }
+
+    /** Computed from the anchor each time so integer rounding does not drift over long clips. */
+    private long slotTime(long index) {
+        return anchorUs + index * 1_000_000L / targetFrameRate;
+    }
+}
@@ -0,0 +1,59 @@
+package com.together.app.plugins;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.together.app.push.HeartbeatNotifier;
+
+import org.json.JSONException;
+
+/**
+ * Capacitor 插件：读取原生层记录的最近心跳
+ */
+@CapacitorPlugin(name = "Heartbeat")
+public class HeartbeatPlugin extends Plugin {
+    private static final String EVENT_HEARTBEAT = "heartbeatReceived";
+
+    @Override
+    public void load() {
+        HeartbeatNotifier.setListener(heartbeat -> {
+            try {
+                notifyListeners(EVENT_HEARTBEAT, JSObject.fromJSONObject(heartbeat));
+            } catch (JSONException e) {
+                // Record is still readable through getRecent
+            }
+        });
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        HeartbeatNotifier.setListener(null);
+        super.handleOnDestroy();
+    }
+
+    /**
+     * 获取最近收到的心跳（从旧到新）
+     */
+    @PluginMethod
+    public void getRecent(PluginCall call) {
+        try {
+            JSObject ret = new JSObject();
+            ret.put("heartbeats", new JSArray(HeartbeatNotifier.getRecent(getContext()).toString()));
+            call.resolve(ret);
+        } catch (JSONException e) {
+            call.reject("Failed to read heartbeats", e);
+        }
+    }
+
+    /**
+     * 清除心跳记录和通知
+     */
+    @PluginMethod
+    public void clear(PluginCall call) {
+        HeartbeatNotifier.clear(getContext());
+        call.resolve();
+    }
+}
@@ -0,0 +1,203 @@
+package com.together.app.plugins;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ImageCompressor {
+    private static final String TAG = "ImageCompressor";
+    private static final int MIN_QUALITY = 40;
+    private static final int QUALITY_STEP = 10;
+
+    public static final String FORMAT_WEBP = "webp";
+    public static final String FORMAT_JPEG = "jpeg";
+
+    private final Context context;
+
+    public ImageCompressor(Context context) {
+        this.context = context;
+    }
+
+    public static class Settings {
+        public final int maxDimension;
+        public final String format;
+        public final int quality;
+        /** Target upper bound for the encoded size; 0 disables the size search. */
+        public final long maxBytes;
+
+        public Settings(int maxDimension, String format, int quality, long maxBytes) {
+            this.maxDimension = maxDimension;
+            this.format = format;
+            this.quality = quality;
+            this.maxBytes = maxBytes;
+        }
+
+        public String extension() {
+            return FORMAT_WEBP.equals(format) ? ".webp" : ".jpg";
+        }
+
+        public String mimeType() {
+            return FORMAT_WEBP.equals(format) ? "image/webp" : "image/jpeg";
+        }
+    }
+
+    public static class Result {
+        public final long size;
+        public final int width;
+        public final int height;
+        public final int quality;
+
+        public Result(long size, int width, int height, int quality) {
+            this.size = size;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+        }
+    }
+
+    /**
+     * Reads only the image header, so the caller can skip formats we should not re-encode.
+     */
+    public BitmapFactory.Options readBounds(Uri inputUri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = PluginFiles.openInput(context, inputUri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Unsupported image");
+        }
+        return bounds;
+    }
+
+    public Result compress(Uri inputUri, File outputFile, Settings settings) throws IOException {
+        BitmapFactory.Options bounds = readBounds(inputUri);
+        int orientation = readExifOrientation(inputUri);
+
+        // Decode at the smallest power-of-two sample that still covers the target size
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, settings.maxDimension);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        Bitmap decoded;
+        try (InputStream in = PluginFiles.openInput(context, inputUri)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Failed to decode image");
+        }
+
+        Log.d(TAG, "Decoded " + bounds.outWidth + "x" + bounds.outHeight + " with inSampleSize="
+            + options.inSampleSize + ", orientation=" + orientation);
+
+        Bitmap transformed = transform(decoded, orientation, settings.maxDimension);
+        if (transformed != decoded) {
+            decoded.recycle();
+        }
+
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int quality = settings.quality;
+            while (true) {
+                buffer.reset();
+                transformed.compress(compressFormat(settings.format), quality, buffer);
+                if (settings.maxBytes <= 0 || buffer.size() <= settings.maxBytes || quality <= MIN_QUALITY) {
+                    break;
+                }
+                quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+            }
+
+            try (FileOutputStream out = new FileOutputStream(outputFile)) {
+                buffer.writeTo(out);
+            }
+            return new Result(outputFile.length(), transformed.getWidth(), transformed.getHeight(), quality);
+        } finally {
+            transformed.recycle();
+        }
+    }
+
+    static int calculateInSampleSize(int width, int height, int maxDimension) {
+        int longest = Math.max(width, height);
+        int sampleSize = 1;
+        while (longest / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Applies the EXIF orientation and the final downscale in a single pass.
+     */
+    private Bitmap transform(Bitmap bitmap, int orientation, int maxDimension) {
+        Matrix matrix = new Matrix();
+        float scale = Math.min(1f, (float) maxDimension / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(270);
+                break;
+            default:
+                break;
+        }
+
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+
+    private int readExifOrientation(Uri inputUri) {
+        try (InputStream in = PluginFiles.openInput(context, inputUri)) {
+            ExifInterface exif = new ExifInterface(in);
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read EXIF orientation", e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat compressFormat(String format) {
+        if (!FORMAT_WEBP.equals(format)) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -0,0 +1,206 @@
+package com.together.app.plugins;
+
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@CapacitorPlugin(name = "ImageCompressor")
+public class ImageCompressorPlugin extends Plugin {
+    private static final String TAG = "ImageCompressor";
+    private static final String OUTPUT_DIR = "image_compressor";
+    /** Compressed files older than this are removed when the plugin loads. */
+    private static final long OUTPUT_TTL_MS = 24L * 60 * 60 * 1000;
+    /** Decoding is memory-bound, so a small pool is enough even on big cores. */
+    private static final int POOL_SIZE = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE);
+    private static final AtomicInteger fileCounter = new AtomicInteger();
+
+    @Override
+    public void load() {
+        executor.execute(() -> clearOutputDir(OUTPUT_TTL_MS));
+    }
+
+    /**
+     * 压缩一张或多张图片
+     * 接收：paths, maxDimension, format (webp | jpeg), quality, maxBytes
+     */
+    @PluginMethod
+    public void compress(PluginCall call) {
+        JSArray pathsArray = call.getArray("paths");
+        List<String> paths;
+        try {
+            paths = pathsArray != null ? pathsArray.<String>toList() : new ArrayList<>();
+        } catch (JSONException e) {
+            call.reject("paths must be an array of strings", e);
+            return;
+        }
+        if (paths.isEmpty()) {
+            call.reject("paths is required");
+            return;
+        }
+
+        String format = ImageCompressor.FORMAT_WEBP.equals(call.getString("format"))
+            ? ImageCompressor.FORMAT_WEBP
+            : ImageCompressor.FORMAT_JPEG;
+        ImageCompressor.Settings settings = new ImageCompressor.Settings(
+            call.getInt("maxDimension", 1920),
+            format,
+            Math.max(1, Math.min(100, call.getInt("quality", 85))),
+            call.getLong("maxBytes", 0L)
+        );
+
+        // Fan the images out across the pool; whichever task finishes last resolves the call
+        JSObject[] results = new JSObject[paths.size()];
+        AtomicInteger remaining = new AtomicInteger(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            int index = i;
+            String path = paths.get(i);
+            executor.execute(() -> {
+                try {
+                    results[index] = compressOne(path, settings);
+                } catch (Exception e) {
+                    JSObject failed = new JSObject();
+                    failed.put("originalPath", path);
+                    failed.put("error", e.getMessage());
+                    results[index] = failed;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    JSArray array = new JSArray();
+                    for (JSObject result : results) {
+                        array.put(result);
+                    }
+                    JSObject ret = new JSObject();
+                    ret.put("results", array);
+                    call.resolve(ret);
+                }
+            });
+        }
+    }
+
+    /**
+     * 删除指定的压缩结果文件，只处理本插件输出目录下的文件
+     * 接收：paths
+     */
+    @PluginMethod
+    public void release(PluginCall call) {
+        JSArray pathsArray = call.getArray("paths");
+        List<String> paths;
+        try {
+            paths = pathsArray != null ? pathsArray.<String>toList() : new ArrayList<>();
+        } catch (JSONException e) {
+            call.reject("paths must be an array of strings", e);
+            return;
+        }
+
+        executor.execute(() -> {
+            File outputDir = getOutputDir();
+            int deleted = 0;
+            for (String path : paths) {
+                Uri uri = PluginFiles.parseUri(path);
+                if (!"file".equals(uri.getScheme()) || uri.getPath() == null) {
+                    continue;
+                }
+                File file = new File(uri.getPath());
+                if (outputDir.equals(file.getParentFile()) && file.delete()) {
+                    deleted++;
+                }
+            }
+            JSObject ret = new JSObject();
+            ret.put("deleted", deleted);
+            call.resolve(ret);
+        });
+    }
+
+    /**
+     * 删除所有压缩生成的临时文件
+     */
+    @PluginMethod
+    public void clearCache(PluginCall call) {
+        executor.execute(() -> {
+            clearOutputDir(0);
+            call.resolve();
+        });
+    }
+
+    private JSObject compressOne(String path, ImageCompressor.Settings settings) throws Exception {
+        ImageCompressor compressor = new ImageCompressor(getContext());
+        Uri inputUri = PluginFiles.parseUri(path);
+
+        JSObject ret = new JSObject();
+        ret.put("originalPath", path);
+
+        // GIFs may be animated; re-encoding would drop the animation
+        BitmapFactory.Options bounds = compressor.readBounds(inputUri);
+        if ("image/gif".equals(bounds.outMimeType)) {
+            ret.put("path", path);
+            ret.put("compressed", false);
+            ret.put("width", bounds.outWidth);
+            ret.put("height", bounds.outHeight);
+            ret.put("mimeType", bounds.outMimeType);
+            return ret;
+        }
+
+        File outputFile = createOutputFile(settings);
+        try {
+            ImageCompressor.Result result = compressor.compress(inputUri, outputFile, settings);
+            Log.d(TAG, "Compressed " + path + " -> " + result.width + "x" + result.height
+                + ", size=" + result.size + ", quality=" + result.quality);
+
+            ret.put("path", outputFile.getAbsolutePath());
+            ret.put("compressed", true);
+            ret.put("size", result.size);
+            ret.put("width", result.width);
+            ret.put("height", result.height);
+            ret.put("mimeType", settings.mimeType());
+            return ret;
+        } catch (Exception e) {
+            Log.e(TAG, "Compression failed: " + path, e);
+            outputFile.delete();
+            throw e;
+        }
+    }
+
+    private File getOutputDir() {
+        File dir = new File(getContext().getCacheDir(), OUTPUT_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Failed to create output dir: " + dir);
+        }
+        return dir;
+    }
+
+    private File createOutputFile(ImageCompressor.Settings settings) {
+        String filename = "compressed_" + System.currentTimeMillis() + "_" + fileCounter.incrementAndGet()
+            + settings.extension();
+        return new File(getOutputDir(), filename);
+    }
+
+    private void clearOutputDir(long maxAgeMs) {
+        File[] files = getOutputDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() >= maxAgeMs) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.together.app.plugins;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Resolves the paths the web layer hands to plugins.
+ */
+final class PluginFiles {
+    private static final String CAPACITOR_FILE_MARKER = "/_capacitor_file_";
+
+    private PluginFiles() {
+    }
+
+    /**
+     * Accepts content:// and file:// URIs, plain file paths, and URLs produced by
+     * Capacitor.convertFileSrc (e.g. https://localhost/_capacitor_file_/data/...).
+     */
+    static Uri parseUri(String path) {
+        int marker = path.indexOf(CAPACITOR_FILE_MARKER);
+        if (marker >= 0) {
+            return Uri.fromFile(new File(Uri.decode(path.substring(marker + CAPACITOR_FILE_MARKER.length()))));
+        }
+        if (path.startsWith("content://") || path.startsWith("file://")) {
+            return Uri.parse(path);
+        }
+        // Assume it's a file path
+        return Uri.fromFile(new File(path));
+    }
+
+    static InputStream openInput(Context context, Uri uri) throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,62 @@
+package com.together.app.plugins;
+
+/**
+ * Decides which samples a segment decodes and which decoded frames it keeps.
+ *
+ * Segments are split at sync samples, but with open GOPs (and B-frames in
+ * general) the pictures around a split point depend on both sides of it:
+ * leading pictures that follow the sync sample in decode order are shown
+ * before it and reference the previous GOP. So a segment starts decoding at
+ * the sync sample before its start, keeps feeding through the next split
+ * point's sync sample and its leading pictures, and only keeps frames whose
+ * presentation time falls inside {@code [startUs, endUs)}.
+ */
+class SegmentBoundaries {
+    private final long startUs;
+    private final long endUs;
+    private boolean reachedEndSync;
+
+    /**
+     * @param startUs split point the segment starts at; {@code Long.MIN_VALUE} for the start of the clip
+     * @param endUs   next segment's split point; {@code Long.MAX_VALUE} for the end of the clip
+     */
+    SegmentBoundaries(long startUs, long endUs) {
+        this.startUs = startUs;
+        this.endUs = endUs;
+    }
+
+    /**
+     * Time to seek to with SEEK_TO_PREVIOUS_SYNC. Lands on the sync sample before
+     * the split point, so the leading pictures at the split point can be decoded.
+     */
+    long seekTimeUs() {
+        return startUs <= 0 ? 0 : startUs - 1;
+    }
+
+    /**
+     * Returns whether the next sample in decode order should be queued to the decoder.
+     * Once this returns false the segment's input is complete.
+     */
+    boolean shouldFeed(long sampleTimeUs, boolean sync) {
+        if (sampleTimeUs < 0) {
+            return false;
+        }
+        if (sampleTimeUs < endUs) {
+            return true;
+        }
+        // The next split point's sync sample is a reference for the leading pictures after it
+        if (sync && !reachedEndSync) {
+            reachedEndSync = true;
+            return true;
+        }
+        // A trailing picture of the next GOP, or the sync after it
+        return !reachedEndSync && !sync;
+    }
+
+    /**
+     * Returns whether a decoded frame belongs to this segment.
+     */
+    boolean keep(long presentationTimeUs) {
+        return presentationTimeUs >= startUs && presentationTimeUs < endUs;
+    }
+}
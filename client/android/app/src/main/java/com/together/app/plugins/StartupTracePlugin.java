@@ -0,0 +1,61 @@
+package com.together.app.plugins;
+
+import android.os.SystemClock;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.together.app.StartupTrace;
+
+import java.util.Map;
+
+/**
+ * Capacitor 插件：读取冷启动打点，并允许 Web 层补充自己的时间点（如首帧）
+ */
+@CapacitorPlugin(name = "StartupTrace")
+public class StartupTracePlugin extends Plugin {
+
+    /**
+     * 记录一个打点，如 first_web_paint
+     * 传入 epochMs（JS 侧发生时刻的墙上时间）时按该时刻记录，不把桥接耗时算进去
+     */
+    @PluginMethod
+    public void mark(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null || name.isEmpty()) {
+            call.reject("name is required");
+            return;
+        }
+        Double epochMs = call.getDouble("epochMs");
+        if (epochMs != null) {
+            // 两个时钟在同一设备上，用当前差值把墙上时间换算为 elapsedRealtime
+            long ageMs = System.currentTimeMillis() - Math.round(epochMs);
+            StartupTrace.mark(name, SystemClock.elapsedRealtime() - Math.max(0, ageMs));
+        } else {
+            StartupTrace.mark(name);
+        }
+        call.resolve();
+    }
+
+    /**
+     * 返回所有打点，时间为相对进程启动的毫秒数
+     */
+    @PluginMethod
+    public void getMarks(PluginCall call) {
+        long processStart = StartupTrace.getProcessStart();
+        JSArray marks = new JSArray();
+        for (Map.Entry<String, Long> entry : StartupTrace.getMarks().entrySet()) {
+            JSObject mark = new JSObject();
+            mark.put("name", entry.getKey());
+            mark.put("sinceProcessStartMs", entry.getValue() - processStart);
+            mark.put("elapsedRealtimeMs", entry.getValue());
+            marks.put(mark);
+        }
+        JSObject ret = new JSObject();
+        ret.put("marks", marks);
+        call.resolve(ret);
+    }
+}
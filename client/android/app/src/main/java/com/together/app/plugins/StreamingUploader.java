@@ -0,0 +1,254 @@
+package com.together.app.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streams a file from disk to an HTTP endpoint without holding it in memory.
+ *
+ * Supports a single PUT (presigned URLs) and a multipart/form-data POST (the
+ * backend's /api/upload route). Each request is retried on network errors and
+ * retryable statuses.
+ *
+ * Kept free of Android APIs so it can be exercised against a local server in
+ * plain JVM tests.
+ */
+public class StreamingUploader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 60_000;
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_RETRY_DELAY_MS = 1000;
+
+    /**
+     * A re-openable byte source, so a retry can start again from any offset.
+     */
+    public interface Source {
+        long length() throws IOException;
+
+        InputStream open(long offset) throws IOException;
+    }
+
+    public interface ProgressListener {
+        void onProgress(long bytesSent, long totalBytes);
+    }
+
+    public static class Response {
+        public final int status;
+        public final String body;
+        public final String etag;
+
+        Response(int status, String body, String etag) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+
+    public static class UploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+
+        UploadException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Attempt {
+        Response run() throws IOException;
+    }
+
+    private final int maxAttempts;
+    private final long retryDelayMs;
+
+    public StreamingUploader() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY_MS);
+    }
+
+    public StreamingUploader(int maxAttempts, long retryDelayMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public static Source fileSource(File file) {
+        return new Source() {
+            @Override
+            public long length() {
+                return file.length();
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                FileInputStream in = new FileInputStream(file);
+                in.getChannel().position(offset);
+                return in;
+            }
+        };
+    }
+
+    /**
+     * Uploads the whole source as the request body of a single PUT.
+     */
+    public Response put(String url, Source source, String contentType, Map<String, String> headers,
+            ProgressListener listener) throws IOException {
+        long length = source.length();
+        return withRetry(() -> send("PUT", url, source, 0, length, contentType, headers, null, null,
+            sent -> report(listener, sent, length)));
+    }
+
+    /**
+     * Uploads the source as one file field of a multipart/form-data POST.
+     */
+    public Response postMultipart(String url, Source source, String fieldName, String fileName, String contentType,
+            Map<String, String> fields, Map<String, String> headers, ProgressListener listener) throws IOException {
+        String boundary = "----together" + UUID.randomUUID().toString().replace("-", "");
+        StringBuilder preamble = new StringBuilder();
+        if (fields != null) {
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                preamble.append("--").append(boundary).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"").append(escapeQuotes(field.getKey())).append("\"\r\n\r\n")
+                    .append(field.getValue()).append("\r\n");
+            }
+        }
+        preamble.append("--").append(boundary).append("\r\n")
+            .append("Content-Disposition: form-data; name=\"").append(escapeQuotes(fieldName))
+            .append("\"; filename=\"").append(escapeQuotes(fileName)).append("\"\r\n")
+            .append("Content-Type: ").append(contentType).append("\r\n\r\n");
+        String epilogue = "\r\n--" + boundary + "--\r\n";
+
+        long length = source.length();
+        byte[] head = preamble.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] tail = epilogue.getBytes(StandardCharsets.UTF_8);
+        return withRetry(() -> send("POST", url, source, 0, length, "multipart/form-data; boundary=" + boundary,
+            headers, head, tail, sent -> report(listener, sent, length)));
+    }
+
+    private Response withRetry(Attempt attempt) throws IOException {
+        IOException last = null;
+        for (int i = 0; i < maxAttempts; i++) {
+            if (i > 0) {
+                sleep(retryDelayMs << (i - 1));
+            }
+            try {
+                return attempt.run();
+            } catch (UploadException e) {
+                if (!isRetryable(e.status)) {
+                    throw e;
+                }
+                last = e;
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    private Response send(String method, String url, Source source, long offset, long length, String contentType,
+            Map<String, String> headers, byte[] head, byte[] tail, SentListener sentListener) throws IOException {
+        long bodyLength = length + (head != null ? head.length : 0) + (tail != null ? tail.length : 0);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod(method);
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // Stream straight from disk instead of buffering the body for Content-Length
+            connection.setFixedLengthStreamingMode(bodyLength);
+            if (contentType != null) {
+                connection.setRequestProperty("Content-Type", contentType);
+            }
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            try (OutputStream out = connection.getOutputStream();
+                 InputStream in = source.open(offset)) {
+                if (head != null) {
+                    out.write(head);
+                }
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = length;
+                long sent = 0;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Source ended " + remaining + " bytes early");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                    sent += read;
+                    sentListener.onSent(sent);
+                }
+                if (tail != null) {
+                    out.write(tail);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            String body = readBody(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            if (status < 200 || status >= 300) {
+                throw new UploadException(status, "Upload failed with status " + status);
+            }
+            return new Response(status, body, connection.getHeaderField("ETag"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private interface SentListener {
+        void onSent(long bytes);
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    private static void report(ProgressListener listener, long sent, long total) {
+        if (listener != null) {
+            listener.onProgress(sent, total);
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+
+    private static String escapeQuotes(String value) {
+        return value.replace("\"", "%22");
+    }
+
+    private static void sleep(long ms) throws IOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.together.app.plugins;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws each decoded frame onto several encoder input surfaces.
+ *
+ * The decoder renders into a SurfaceTexture. Every frame it releases is then
+ * drawn with GLES onto each target's EGL window surface and stamped with its
+ * presentation time, so a single decode can feed any number of encoders.
+ *
+ * Not thread-safe: create, use and release it on the transcoding thread, which
+ * holds the EGL context.
+ */
+class SurfaceFanOut {
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+    private static final long FRAME_TIMEOUT_MS = 2500;
+
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uTexMatrix;\n"
+            + "attribute vec4 aPosition;\n"
+            + "attribute vec4 aTextureCoord;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main() {\n"
+            + "    gl_Position = aPosition;\n"
+            + "    vTextureCoord = (uTexMatrix * aTextureCoord).xy;\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n"
+            + "precision mediump float;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "uniform samplerExternalOES sTexture;\n"
+            + "void main() {\n"
+            + "    gl_FragColor = texture2D(sTexture, vTextureCoord);\n"
+            + "}\n";
+
+    /** Full-screen triangle strip: x, y, u, v per vertex. */
+    private static final float[] QUAD = {
+        -1f, -1f, 0f, 0f,
+        1f, -1f, 1f, 0f,
+        -1f, 1f, 0f, 1f,
+        1f, 1f, 1f, 1f,
+    };
+
+    private static class Target {
+        final EGLSurface eglSurface;
+        final int width;
+        final int height;
+
+        Target(EGLSurface eglSurface, int width, int height) {
+            this.eglSurface = eglSurface;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final List<Target> targets = new ArrayList<>();
+    private final float[] texMatrix = new float[16];
+    private final Object frameLock = new Object();
+    private boolean frameAvailable;
+
+    private EGLDisplay display = EGL14.EGL_NO_DISPLAY;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLConfig eglConfig;
+    /** Keeps the context current while no target is bound, e.g. to latch frames. */
+    private EGLSurface pbuffer = EGL14.EGL_NO_SURFACE;
+
+    private HandlerThread callbackThread;
+    private SurfaceTexture surfaceTexture;
+    private Surface inputSurface;
+
+    private int program;
+    private int textureId;
+    private int positionLocation;
+    private int textureCoordLocation;
+    private int texMatrixLocation;
+    private FloatBuffer quad;
+
+    SurfaceFanOut() throws IOException {
+        try {
+            setUpEgl();
+            setUpGl();
+        } catch (RuntimeException | IOException e) {
+            release();
+            throw e;
+        }
+
+        // Frame callbacks need a looper; the transcoding thread has none
+        callbackThread = new HandlerThread("SurfaceFanOut");
+        callbackThread.start();
+        surfaceTexture = new SurfaceTexture(textureId);
+        surfaceTexture.setOnFrameAvailableListener(texture -> {
+            synchronized (frameLock) {
+                frameAvailable = true;
+                frameLock.notifyAll();
+            }
+        }, new Handler(callbackThread.getLooper()));
+        inputSurface = new Surface(surfaceTexture);
+    }
+
+    /**
+     * The surface the decoder should render into.
+     */
+    Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    /**
+     * Adds an output surface, typically from {@code MediaCodec#createInputSurface()}.
+     *
+     * @return the index to pass to {@link #drawTo}
+     */
+    int addTarget(Surface surface, int width, int height) throws IOException {
+        int[] attributes = {EGL14.EGL_NONE};
+        EGLSurface eglSurface = EGL14.eglCreateWindowSurface(display, eglConfig, surface, attributes, 0);
+        checkEgl("eglCreateWindowSurface");
+        targets.add(new Target(eglSurface, width, height));
+        return targets.size() - 1;
+    }
+
+    /**
+     * Waits for the frame the decoder just released and latches it into the texture.
+     */
+    void awaitFrame() throws IOException {
+        synchronized (frameLock) {
+            long deadline = SystemClock.uptimeMillis() + FRAME_TIMEOUT_MS;
+            while (!frameAvailable) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for decoded frame");
+                }
+                try {
+                    frameLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for decoded frame", e);
+                }
+            }
+            frameAvailable = false;
+        }
+        makeCurrent(pbuffer);
+        surfaceTexture.updateTexImage();
+        surfaceTexture.getTransformMatrix(texMatrix);
+    }
+
+    /**
+     * Draws the latched frame onto a target and submits it to the encoder.
+     */
+    void drawTo(int index, long presentationTimeUs) throws IOException {
+        Target target = targets.get(index);
+        makeCurrent(target.eglSurface);
+        GLES20.glViewport(0, 0, target.width, target.height);
+
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glUniformMatrix4fv(texMatrixLocation, 1, false, texMatrix, 0);
+
+        quad.position(0);
+        GLES20.glVertexAttribPointer(positionLocation, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(positionLocation);
+        quad.position(2);
+        GLES20.glVertexAttribPointer(textureCoordLocation, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(textureCoordLocation);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        EGLExt.eglPresentationTimeANDROID(display, target.eglSurface, presentationTimeUs * 1000);
+        if (!EGL14.eglSwapBuffers(display, target.eglSurface)) {
+            throw new IOException("eglSwapBuffers failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+        }
+    }
+
+    void release() {
+        if (display != EGL14.EGL_NO_DISPLAY) {
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            for (Target target : targets) {
+                EGL14.eglDestroySurface(display, target.eglSurface);
+            }
+            if (pbuffer != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(display, pbuffer);
+            }
+            if (eglContext != EGL14.EGL_NO_CONTEXT) {
+                EGL14.eglDestroyContext(display, eglContext);
+            }
+            EGL14.eglReleaseThread();
+            EGL14.eglTerminate(display);
+        }
+        targets.clear();
+        display = EGL14.EGL_NO_DISPLAY;
+        eglContext = EGL14.EGL_NO_CONTEXT;
+        pbuffer = EGL14.EGL_NO_SURFACE;
+
+        if (inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        if (surfaceTexture != null) {
+            surfaceTexture.release();
+            surfaceTexture = null;
+        }
+        if (callbackThread != null) {
+            callbackThread.quitSafely();
+            callbackThread = null;
+        }
+    }
+
+    private void setUpEgl() throws IOException {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (display == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(display, version, 0, version, 1)) {
+            throw new IOException("Unable to initialize EGL");
+        }
+
+        int[] configAttributes = {
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_ALPHA_SIZE, 8,
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT | EGL14.EGL_PBUFFER_BIT,
+            EGL_RECORDABLE_ANDROID, 1,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, configAttributes, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+            throw new IOException("No recordable EGL config");
+        }
+        eglConfig = configs[0];
+
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        eglContext = EGL14.eglCreateContext(display, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        checkEgl("eglCreateContext");
+
+        int[] pbufferAttributes = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+        pbuffer = EGL14.eglCreatePbufferSurface(display, eglConfig, pbufferAttributes, 0);
+        checkEgl("eglCreatePbufferSurface");
+        makeCurrent(pbuffer);
+    }
+
+    private void setUpGl() throws IOException {
+        program = createProgram();
+        positionLocation = GLES20.glGetAttribLocation(program, "aPosition");
+        textureCoordLocation = GLES20.glGetAttribLocation(program, "aTextureCoord");
+        texMatrixLocation = GLES20.glGetUniformLocation(program, "uTexMatrix");
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        quad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        quad.put(QUAD).position(0);
+    }
+
+    private int createProgram() throws IOException {
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        int result = GLES20.glCreateProgram();
+        GLES20.glAttachShader(result, vertexShader);
+        GLES20.glAttachShader(result, fragmentShader);
+        GLES20.glLinkProgram(result);
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(result, GLES20.GL_LINK_STATUS, status, 0);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetProgramInfoLog(result);
+            GLES20.glDeleteProgram(result);
+            throw new IOException("Failed to link program: " + log);
+        }
+        return result;
+    }
+
+    private static int compileShader(int type, String source) throws IOException {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IOException("Failed to compile shader: " + log);
+        }
+        return shader;
+    }
+
+    private void makeCurrent(EGLSurface surface) throws IOException {
+        if (!EGL14.eglMakeCurrent(display, surface, surface, eglContext)) {
+            throw new IOException("eglMakeCurrent failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+        }
+    }
+
+    private static void checkEgl(String operation) throws IOException {
+        int error = EGL14.eglGetError();
+        if (error != EGL14.EGL_SUCCESS) {
+            throw new IOException(operation + " failed: 0x" + Integer.toHexString(error));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.together.app.plugins;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Capacitor 插件：直接从磁盘流式上传文件，文件内容不经过 JS
+ */
+@CapacitorPlugin(name = "Uploader")
+public class UploaderPlugin extends Plugin {
+    private static final String TAG = "Uploader";
+    private static final String EVENT_PROGRESS = "uploadProgress";
+    private static final long PROGRESS_INTERVAL_MS = 200;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    /**
+     * 上传单个文件
+     * 接收：path, url, method (PUT | POST), contentType, headers, fieldName, fileName, fields, uploadId
+     * PUT 直接以文件作为请求体（预签名 URL），POST 以 multipart/form-data 上传（/api/upload）
+     */
+    @PluginMethod
+    public void upload(PluginCall call) {
+        String path = call.getString("path");
+        String url = call.getString("url");
+        if (path == null || path.isEmpty() || url == null || url.isEmpty()) {
+            call.reject("path and url are required");
+            return;
+        }
+
+        String method = call.getString("method", "PUT");
+        String contentType = call.getString("contentType", "application/octet-stream");
+        String uploadId = call.getString("uploadId", path);
+        Map<String, String> headers = toStringMap(call.getObject("headers"));
+
+        executor.execute(() -> {
+            try {
+                StreamingUploader.Source source = openSource(path);
+                StreamingUploader uploader = new StreamingUploader();
+                StreamingUploader.ProgressListener listener = progressListener(uploadId);
+
+                StreamingUploader.Response response;
+                if ("POST".equalsIgnoreCase(method)) {
+                    String fileName = call.getString("fileName", Uri.parse(path).getLastPathSegment());
+                    response = uploader.postMultipart(url, source, call.getString("fieldName", "file"), fileName,
+                        contentType, toStringMap(call.getObject("fields")), headers, listener);
+                } else {
+                    response = uploader.put(url, source, contentType, headers, listener);
+                }
+
+                JSObject ret = new JSObject();
+                ret.put("status", response.status);
+                ret.put("body", response.body);
+                ret.put("etag", response.etag);
+                call.resolve(ret);
+            } catch (Exception e) {
+                Log.e(TAG, "Upload failed: " + path, e);
+                call.reject("Upload failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private StreamingUploader.ProgressListener progressListener(String uploadId) {
+        long[] lastEmit = {0};
+        return (sent, total) -> {
+            long now = SystemClock.elapsedRealtime();
+            if (sent < total && now - lastEmit[0] < PROGRESS_INTERVAL_MS) {
+                return;
+            }
+            lastEmit[0] = now;
+            JSObject event = new JSObject();
+            event.put("uploadId", uploadId);
+            event.put("bytesSent", sent);
+            event.put("totalBytes", total);
+            event.put("progress", total > 0 ? (int) (sent * 100 / total) : 100);
+            notifyListeners(EVENT_PROGRESS, event);
+        };
+    }
+
+    private StreamingUploader.Source openSource(String path) throws IOException {
+        if (!path.startsWith("content://")) {
+            File file = path.startsWith("file://") ? new File(Uri.parse(path).getPath()) : new File(path);
+            if (!file.isFile()) {
+                throw new FileNotFoundException(path);
+            }
+            return StreamingUploader.fileSource(file);
+        }
+
+        Uri uri = Uri.parse(path);
+        ContentResolver resolver = getContext().getContentResolver();
+        long length;
+        try (AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(uri, "r")) {
+            if (descriptor == null || descriptor.getLength() == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                throw new IOException("Unknown length for " + path);
+            }
+            length = descriptor.getLength();
+        }
+        return new StreamingUploader.Source() {
+            @Override
+            public long length() {
+                return length;
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(uri, "r");
+                if (descriptor == null) {
+                    throw new FileNotFoundException(path);
+                }
+                FileInputStream in = descriptor.createInputStream();
+                in.getChannel().position(descriptor.getStartOffset() + offset);
+                return in;
+            }
+        };
+    }
+
+    private static Map<String, String> toStringMap(JSObject object) {
+        Map<String, String> map = new HashMap<>();
+        if (object == null) {
+            return map;
+        }
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            map.put(key, object.optString(key));
+        }
+        return map;
+    }
+}
@@ -3,9 +3,9 @@ package com.together.app.plugins;
 import android.content.Context;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
-import android.media.MediaMetadataRetriever;
 import android.media.MediaMuxer;
 import android.net.Uri;
 import android.util.Log;
@@ -13,7 +13,19 @@ import android.view.Surface;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class VideoCompressor {
     private static final String TAG = "VideoCompressor";
@@ -21,24 +33,91 @@ public class VideoCompressor {
     private static final String MIME_TYPE_AUDIO = "audio/mp4a-latm";
     private static final int TIMEOUT_US = 10000;
     private static final int I_FRAME_INTERVAL = 1;
+    private static final int SAMPLE_BUFFER_SIZE = 1024 * 1024;
+    public static final int DEFAULT_FRAME_RATE = 30;
+
+    /** Clips shorter than this are not worth splitting across codec instances. */
+    private static final long PARALLEL_MIN_DURATION_US = 20_000_000L;
+    /** Each segment should still span several GOPs. */
+    private static final long PARALLEL_MIN_SEGMENT_US = 5_000_000L;
+    private static final int PARALLEL_MAX_SEGMENTS = 4;
 
     private final Context context;
+    private ProgressListener progressListener;
+    private volatile boolean cancelled;
+    private CompressionThrottle throttle;
+
+    // Pacing state used while the throttle restricts the operating rate
+    private int pacedRate;
+    private long paceStartNs;
+    private long pacedFrames;
 
     public VideoCompressor(Context context) {
         this.context = context;
     }
 
+    /**
+     * Receives transcode progress as a percentage of the source duration.
+     */
+    public interface ProgressListener {
+        void onProgress(int percent);
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Lets thermal / battery state limit the codec operating rate during the transcode.
+     */
+    public void setThrottle(CompressionThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Stops a running transcode; {@link #compress} then throws an {@link InterruptedIOException}.
+     * Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Compression cancelled");
+        }
+    }
+
     public static class Settings {
         public final int maxWidth;
         public final int maxHeight;
         public final int videoBitrate;
         public final int audioBitrate;
+        public final int frameRate;
 
         public Settings(int maxWidth, int maxHeight, int videoBitrate, int audioBitrate) {
+            this(maxWidth, maxHeight, videoBitrate, audioBitrate, DEFAULT_FRAME_RATE);
+        }
+
+        public Settings(int maxWidth, int maxHeight, int videoBitrate, int audioBitrate, int frameRate) {
             this.maxWidth = maxWidth;
             this.maxHeight = maxHeight;
             this.videoBitrate = videoBitrate;
             this.audioBitrate = audioBitrate;
+            this.frameRate = frameRate;
+        }
+
+        public Settings withFrameRate(int frameRate) {
+            return new Settings(maxWidth, maxHeight, videoBitrate, audioBitrate, frameRate);
+        }
+
+        boolean sameAs(Settings other) {
+            return other != null
+                && maxWidth == other.maxWidth
+                && maxHeight == other.maxHeight
+                && videoBitrate == other.videoBitrate
+                && audioBitrate == other.audioBitrate
+                && frameRate == other.frameRate;
         }
     }
 
@@ -52,43 +131,167 @@ public class VideoCompressor {
         }
     }
 
-    public Result compress(Uri inputUri, File outputFile, Settings settings) throws IOException {
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            retriever.setDataSource(context, inputUri);
+    /**
+     * One output of a multi-rendition transcode, e.g. a feed preview next to the full-quality video.
+     */
+    public static class Rendition {
+        public final File outputFile;
+        public final Settings settings;
+
+        public Rendition(File outputFile, Settings settings) {
+            this.outputFile = outputFile;
+            this.settings = settings;
+        }
+    }
+
+    /**
+     * Encoder, muxer and frame selection state of one rendition during a transcode.
+     */
+    private static class Output {
+        final Rendition rendition;
+        final int width;
+        final int height;
+        final FrameDecimator decimator;
+        MediaCodec encoder;
+        Surface inputSurface;
+        MediaMuxer muxer;
+        int fanOutTarget = -1;
+        int videoTrack = -1;
+        int audioTrack = -1;
+        boolean muxerStarted;
+        boolean done;
+        long lastPresentationTimeUs;
+
+        Output(Rendition rendition, int width, int height) {
+            this.rendition = rendition;
+            this.width = width;
+            this.height = height;
+            // High-fps and slow-motion sources are thinned to the output rate before the encoder sees them
+            this.decimator = new FrameDecimator(rendition.settings.frameRate);
+        }
+    }
+
+    /**
+     * A source time range transcoded on its own codec pair into a temporary file.
+     */
+    private static class Segment {
+        final int index;
+        /** Sync sample the range starts at; {@code Long.MIN_VALUE} for the start of the clip. */
+        final long startUs;
+        /** Exclusive end, i.e. the next segment's sync sample. */
+        final long endUs;
+        final File file;
+        MediaFormat outputFormat;
+        /** Source timestamp of the first encoded sample, or -1 before it is written. */
+        long firstSampleTimeUs = -1;
+        volatile long progressUs;
+        /** Set once the segment file is complete; finished segments survive a fallback. */
+        volatile boolean done;
+
+        Segment(int index, long startUs, long endUs, File file) {
+            this.index = index;
+            this.startUs = startUs;
+            this.endUs = endUs;
+            this.file = file;
+        }
 
-            String widthStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
-            String heightStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
-            String durationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            String rotationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+        /** Drops a partially written segment so it can be transcoded again. */
+        void reset() {
+            file.delete();
+            outputFormat = null;
+            firstSampleTimeUs = -1;
+            progressUs = 0;
+        }
+    }
 
-            int originalWidth = widthStr != null ? Integer.parseInt(widthStr) : 1920;
-            int originalHeight = heightStr != null ? Integer.parseInt(heightStr) : 1080;
-            long durationMs = durationStr != null ? Long.parseLong(durationStr) : 0;
-            int rotation = rotationStr != null ? Integer.parseInt(rotationStr) : 0;
+    /**
+     * State of one parallel transcode, shared by its segment threads.
+     */
+    private static class ParallelRun {
+        final List<Segment> segments;
+        final long durationUs;
+        // Codec config of the first segment encoder to start; every other segment must match it
+        private MediaFormat config;
+        private int progress = -1;
+
+        ParallelRun(List<Segment> segments, long durationUs) {
+            this.segments = segments;
+            this.durationUs = durationUs;
+        }
 
-            // Handle rotation - swap dimensions if rotated 90 or 270
-            if (rotation == 90 || rotation == 270) {
-                int temp = originalWidth;
-                originalWidth = originalHeight;
-                originalHeight = temp;
+        /**
+         * Fails the segment as soon as its encoder reports parameter sets that differ
+         * from another segment's, rather than after every segment has been encoded.
+         */
+        synchronized void checkConfig(Segment segment) throws IOException {
+            if (config == null) {
+                config = segment.outputFormat;
+            } else if (!sameCodecConfig(config, segment.outputFormat)) {
+                throw new IOException("Segment " + segment.index + " has a different codec config");
             }
+        }
+    }
+
+    public Result compress(Uri inputUri, File outputFile, Settings settings) throws IOException {
+        return compress(inputUri, Collections.singletonList(new Rendition(outputFile, settings))).get(0);
+    }
+
+    /**
+     * Decodes the input once and encodes every rendition from the same frames.
+     * The audio track is read once and copied into each output unchanged.
+     *
+     * @return one result per rendition, in the same order
+     */
+    public List<Result> compress(Uri inputUri, List<Rendition> renditions) throws IOException {
+        if (renditions.isEmpty()) {
+            throw new IllegalArgumentException("At least one rendition is required");
+        }
+
+        try (VideoInput input = VideoInput.open(context, inputUri)) {
+            MediaExtractor videoExtractor = input.createExtractor();
+            VideoInput.Probe probe = input.probe(videoExtractor);
 
-            Log.d(TAG, "Original video: " + originalWidth + "x" + originalHeight + ", duration=" + durationMs + "ms, rotation=" + rotation);
+            // Display dimensions already account for 90 / 270 rotation
+            int originalWidth = probe.displayWidth();
+            int originalHeight = probe.displayHeight();
+            long durationMs = probe.durationUs / 1000;
+
+            Log.d(TAG, "Original video: " + originalWidth + "x" + originalHeight + ", duration=" + durationMs + "ms, rotation=" + probe.rotation);
 
             // Calculate output dimensions maintaining aspect ratio
-            int[] outputDims = calculateOutputDimensions(originalWidth, originalHeight, settings.maxWidth, settings.maxHeight);
-            int outputWidth = outputDims[0];
-            int outputHeight = outputDims[1];
+            List<Output> outputs = new ArrayList<>();
+            for (Rendition rendition : renditions) {
+                int[] outputDims = calculateOutputDimensions(originalWidth, originalHeight,
+                    rendition.settings.maxWidth, rendition.settings.maxHeight);
+                outputs.add(new Output(rendition, outputDims[0], outputDims[1]));
+                Log.d(TAG, "Output dimensions: " + outputDims[0] + "x" + outputDims[1]);
+            }
 
-            Log.d(TAG, "Output dimensions: " + outputWidth + "x" + outputHeight);
+            // Long clips are split across several codec instances when the device has them to spare
+            long[] segmentStarts = outputs.size() == 1 ? planSegments(videoExtractor, probe, outputs.get(0)) : null;
+            boolean transcoded = false;
+            if (segmentStarts != null) {
+                try {
+                    transcodeSegments(inputUri, input, probe, outputs.get(0), segmentStarts);
+                    transcoded = true;
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Parallel transcode failed, retrying with a single codec pair", e);
+                    outputs.get(0).rendition.outputFile.delete();
+                }
+            }
 
             // Perform transcoding
-            transcodeVideo(inputUri, outputFile, outputWidth, outputHeight, rotation, settings);
+            if (!transcoded) {
+                transcodeVideo(input, videoExtractor, probe, outputs);
+            }
 
-            return new Result(outputFile.length(), durationMs / 1000.0);
-        } finally {
-            retriever.release();
+            List<Result> results = new ArrayList<>();
+            for (Rendition rendition : renditions) {
+                results.add(new Result(rendition.outputFile.length(), durationMs / 1000.0));
+            }
+            return results;
         }
     }
 
@@ -113,69 +316,55 @@ public class VideoCompressor {
         return new int[]{newWidth, newHeight};
     }
 
-    private void transcodeVideo(Uri inputUri, File outputFile, int outputWidth, int outputHeight, int rotation, Settings settings) throws IOException {
-        MediaExtractor videoExtractor = new MediaExtractor();
-        MediaExtractor audioExtractor = new MediaExtractor();
-        MediaMuxer muxer = null;
+    private void transcodeVideo(VideoInput input, MediaExtractor videoExtractor, VideoInput.Probe probe,
+            List<Output> outputs) throws IOException {
+        int videoTrackIndex = probe.videoTrack;
+        int audioTrackIndex = probe.audioTrack;
+        long durationUs = probe.durationUs;
+        MediaExtractor audioExtractor = null;
+        MediaFormat audioFormat = null;
         MediaCodec videoDecoder = null;
-        MediaCodec videoEncoder = null;
-        MediaCodec audioDecoder = null;
-        MediaCodec audioEncoder = null;
+        SurfaceFanOut fanOut = null;
 
         try {
-            videoExtractor.setDataSource(context, inputUri, null);
-            audioExtractor.setDataSource(context, inputUri, null);
-
-            // Find video and audio tracks
-            int videoTrackIndex = findTrack(videoExtractor, "video/");
-            int audioTrackIndex = findTrack(audioExtractor, "audio/");
-
-            if (videoTrackIndex < 0) {
-                throw new IOException("No video track found");
+            // Audio is copied after the video, from its own extractor over the same descriptor
+            if (audioTrackIndex >= 0) {
+                audioExtractor = input.createExtractor();
+                audioExtractor.selectTrack(audioTrackIndex);
+                audioFormat = audioExtractor.getTrackFormat(audioTrackIndex);
             }
 
             // Setup video
             videoExtractor.selectTrack(videoTrackIndex);
+            videoExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
             MediaFormat inputVideoFormat = videoExtractor.getTrackFormat(videoTrackIndex);
+            applyOperatingRate(inputVideoFormat);
 
-            // Create encoder format
-            MediaFormat outputVideoFormat = MediaFormat.createVideoFormat(MIME_TYPE_VIDEO, outputWidth, outputHeight);
-            outputVideoFormat.setInteger(MediaFormat.KEY_BIT_RATE, settings.videoBitrate);
-            outputVideoFormat.setInteger(MediaFormat.KEY_FRAME_RATE, 30);
-            outputVideoFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL);
-            outputVideoFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
-
-            // Create video encoder
-            videoEncoder = MediaCodec.createEncoderByType(MIME_TYPE_VIDEO);
-            videoEncoder.configure(outputVideoFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-            Surface encoderSurface = videoEncoder.createInputSurface();
-            videoEncoder.start();
+            // A single output takes frames straight from the decoder; several share them through GL
+            if (outputs.size() > 1) {
+                fanOut = new SurfaceFanOut();
+            }
+            for (Output output : outputs) {
+                startOutput(output, fanOut, probe.rotation);
+            }
 
             // Create video decoder
+            Surface decoderSurface = fanOut != null ? fanOut.getInputSurface() : outputs.get(0).inputSurface;
             videoDecoder = MediaCodec.createDecoderByType(inputVideoFormat.getString(MediaFormat.KEY_MIME));
-            videoDecoder.configure(inputVideoFormat, encoderSurface, null, 0);
+            videoDecoder.configure(inputVideoFormat, decoderSurface, null, 0);
             videoDecoder.start();
 
-            // Create muxer
-            muxer = new MediaMuxer(outputFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
-            if (rotation != 0) {
-                muxer.setOrientationHint(rotation);
-            }
-
-            // Process video
-            int outputVideoTrack = -1;
-            int outputAudioTrack = -1;
-            boolean muxerStarted = false;
-
             // Transcode video
             boolean videoInputDone = false;
             boolean videoDecoderDone = false;
-            boolean videoEncoderDone = false;
+            int lastProgress = -1;
 
             MediaCodec.BufferInfo decoderInfo = new MediaCodec.BufferInfo();
             MediaCodec.BufferInfo encoderInfo = new MediaCodec.BufferInfo();
+            boolean[] accepted = new boolean[outputs.size()];
 
-            while (!videoEncoderDone) {
+            while (!allDone(outputs)) {
+                checkCancelled();
                 // Feed input to decoder
                 if (!videoInputDone) {
                     int inputIndex = videoDecoder.dequeueInputBuffer(TIMEOUT_US);
@@ -198,79 +387,498 @@ public class VideoCompressor {
                     int outputIndex = videoDecoder.dequeueOutputBuffer(decoderInfo, TIMEOUT_US);
                     if (outputIndex >= 0) {
                         boolean endOfStream = (decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
-                        videoDecoder.releaseOutputBuffer(outputIndex, true);
+                        long presentationTimeUs = decoderInfo.presentationTimeUs;
+                        boolean render = false;
+                        if (decoderInfo.size > 0 || !endOfStream) {
+                            // Each rendition keeps the frames that fit its own frame rate
+                            for (int i = 0; i < outputs.size(); i++) {
+                                accepted[i] = outputs.get(i).decimator.shouldRender(presentationTimeUs);
+                                render |= accepted[i];
+                            }
+                        }
+                        videoDecoder.releaseOutputBuffer(outputIndex, render);
+                        if (render) {
+                            if (fanOut != null) {
+                                fanOut.awaitFrame();
+                                for (int i = 0; i < outputs.size(); i++) {
+                                    if (accepted[i]) {
+                                        // Make room first so the swap does not block on a full encoder
+                                        drainEncoder(outputs.get(i), audioFormat, encoderInfo, 0);
+                                        fanOut.drawTo(outputs.get(i).fanOutTarget, presentationTimeUs);
+                                    }
+                                }
+                            }
+                            pace();
+                        }
+                        // Still end the encoders' streams when the last frame was dropped
                         if (endOfStream) {
-                            videoEncoder.signalEndOfInputStream();
+                            for (Output output : outputs) {
+                                output.encoder.signalEndOfInputStream();
+                            }
                             videoDecoderDone = true;
                         }
                     }
                 }
 
                 // Get encoder output
-                int outputIndex = videoEncoder.dequeueOutputBuffer(encoderInfo, TIMEOUT_US);
-                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                    outputVideoTrack = muxer.addTrack(videoEncoder.getOutputFormat());
+                for (Output output : outputs) {
+                    drainEncoder(output, audioFormat, encoderInfo, TIMEOUT_US / outputs.size());
+                }
+                lastProgress = reportProgress(slowestPresentationTimeUs(outputs, durationUs), durationUs, lastProgress);
+            }
+
+            // Copy audio track directly (no re-encoding)
+            if (audioExtractor != null) {
+                copyAudio(audioExtractor, outputs);
+            }
 
-                    // Add audio track if exists
-                    if (audioTrackIndex >= 0) {
-                        audioExtractor.selectTrack(audioTrackIndex);
-                        MediaFormat audioFormat = audioExtractor.getTrackFormat(audioTrackIndex);
-                        outputAudioTrack = muxer.addTrack(audioFormat);
+        } finally {
+            // Release resources
+            if (videoDecoder != null) {
+                videoDecoder.stop();
+                videoDecoder.release();
+            }
+            // The GL surfaces wrap the encoder inputs, so they go before the encoders
+            if (fanOut != null) {
+                fanOut.release();
+            }
+            for (Output output : outputs) {
+                releaseOutput(output);
+            }
+        }
+    }
+
+    private MediaFormat createEncoderFormat(Output output) {
+        Settings settings = output.rendition.settings;
+        MediaFormat outputVideoFormat = MediaFormat.createVideoFormat(MIME_TYPE_VIDEO, output.width, output.height);
+        outputVideoFormat.setInteger(MediaFormat.KEY_BIT_RATE, settings.videoBitrate);
+        outputVideoFormat.setInteger(MediaFormat.KEY_FRAME_RATE, settings.frameRate);
+        outputVideoFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL);
+        outputVideoFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        applyOperatingRate(outputVideoFormat);
+        return outputVideoFormat;
+    }
+
+    private void startOutput(Output output, SurfaceFanOut fanOut, int rotation) throws IOException {
+        // Create video encoder
+        output.encoder = MediaCodec.createEncoderByType(MIME_TYPE_VIDEO);
+        output.encoder.configure(createEncoderFormat(output), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        output.inputSurface = output.encoder.createInputSurface();
+        output.encoder.start();
+        if (fanOut != null) {
+            output.fanOutTarget = fanOut.addTarget(output.inputSurface, output.width, output.height);
+        }
+
+        // Create muxer. The fan-out's SurfaceTexture transform already includes the decoder's
+        // rotation, so those frames reach the encoder upright and must not be rotated again.
+        // They are drawn into the display-sized surface as-is, which is why the rotation is
+        // not stripped from the decoder format instead.
+        output.muxer = new MediaMuxer(output.rendition.outputFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        if (rotation != 0 && fanOut == null) {
+            output.muxer.setOrientationHint(rotation);
+        }
+    }
+
+    /**
+     * Writes whatever the encoder has ready to the muxer, waiting up to {@code timeoutUs} for the first buffer.
+     */
+    private void drainEncoder(Output output, MediaFormat audioFormat, MediaCodec.BufferInfo encoderInfo,
+            long timeoutUs) {
+        while (!output.done) {
+            int outputIndex = output.encoder.dequeueOutputBuffer(encoderInfo, timeoutUs);
+            timeoutUs = 0;
+            if (outputIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                return;
+            }
+            if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                output.videoTrack = output.muxer.addTrack(output.encoder.getOutputFormat());
+
+                // Add audio track if exists
+                if (audioFormat != null) {
+                    output.audioTrack = output.muxer.addTrack(audioFormat);
+                }
+
+                output.muxer.start();
+                output.muxerStarted = true;
+            } else if (outputIndex >= 0) {
+                ByteBuffer outputBuffer = output.encoder.getOutputBuffer(outputIndex);
+                if (output.muxerStarted && outputBuffer != null && encoderInfo.size > 0) {
+                    outputBuffer.position(encoderInfo.offset);
+                    outputBuffer.limit(encoderInfo.offset + encoderInfo.size);
+                    output.muxer.writeSampleData(output.videoTrack, outputBuffer, encoderInfo);
+                    output.lastPresentationTimeUs = encoderInfo.presentationTimeUs;
+                }
+                output.encoder.releaseOutputBuffer(outputIndex, false);
+                if ((encoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    output.done = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the audio samples once and writes each into every output.
+     */
+    private void copyAudio(MediaExtractor audioExtractor, List<Output> outputs) {
+        audioExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        ByteBuffer audioBuffer = ByteBuffer.allocate(SAMPLE_BUFFER_SIZE);
+        MediaCodec.BufferInfo audioInfo = new MediaCodec.BufferInfo();
+
+        while (true) {
+            int sampleSize = audioExtractor.readSampleData(audioBuffer, 0);
+            if (sampleSize < 0) {
+                break;
+            }
+            audioInfo.offset = 0;
+            audioInfo.size = sampleSize;
+            audioInfo.presentationTimeUs = audioExtractor.getSampleTime();
+            audioInfo.flags = audioExtractor.getSampleFlags();
+            for (Output output : outputs) {
+                if (output.muxerStarted && output.audioTrack >= 0) {
+                    output.muxer.writeSampleData(output.audioTrack, audioBuffer, audioInfo);
+                }
+            }
+            audioExtractor.advance();
+        }
+    }
+
+    private void releaseOutput(Output output) {
+        if (output.encoder != null) {
+            try {
+                output.encoder.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Error stopping encoder", e);
+            }
+            output.encoder.release();
+        }
+        if (output.inputSurface != null) {
+            output.inputSurface.release();
+        }
+        if (output.muxer != null) {
+            try {
+                output.muxer.stop();
+                output.muxer.release();
+            } catch (Exception e) {
+                Log.w(TAG, "Error stopping muxer", e);
+            }
+        }
+    }
+
+    private static boolean allDone(List<Output> outputs) {
+        for (Output output : outputs) {
+            if (!output.done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Progress follows the rendition that is furthest behind.
+     */
+    private static long slowestPresentationTimeUs(List<Output> outputs, long durationUs) {
+        long slowest = Long.MAX_VALUE;
+        for (Output output : outputs) {
+            slowest = Math.min(slowest, output.done ? durationUs : output.lastPresentationTimeUs);
+        }
+        return slowest;
+    }
+
+    /**
+     * Picks sync samples to split the clip at, or returns null to transcode it in one pass.
+     *
+     * The segment count is bounded by how many decoder and encoder instances
+     * the codecs advertise, by the cores left for the extractors and muxers,
+     * and by a fixed cap, since hardware sessions share one media engine.
+     */
+    private long[] planSegments(MediaExtractor extractor, VideoInput.Probe probe, Output output) {
+        if (probe.durationUs < PARALLEL_MIN_DURATION_US) {
+            return null;
+        }
+        // A throttled job should not add heat by running more codecs
+        if (throttle != null && !CompressionThrottle.LEVEL_NORMAL.equals(throttle.current().level)) {
+            return null;
+        }
+
+        MediaFormat inputFormat = extractor.getTrackFormat(probe.videoTrack);
+        String inputMime = inputFormat.getString(MediaFormat.KEY_MIME);
+        int count = (int) Math.min(PARALLEL_MAX_SEGMENTS, probe.durationUs / PARALLEL_MIN_SEGMENT_US);
+        count = Math.min(count, Runtime.getRuntime().availableProcessors() / 2);
+        if (count > 1) {
+            count = Math.min(count, maxSupportedInstances(
+                MediaFormat.createVideoFormat(inputMime, probe.width, probe.height), false));
+        }
+        if (count > 1) {
+            MediaFormat encoderFormat = MediaFormat.createVideoFormat(MIME_TYPE_VIDEO, output.width, output.height);
+            encoderFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            count = Math.min(count, maxSupportedInstances(encoderFormat, true));
+        }
+        if (count < 2) {
+            return null;
+        }
+
+        extractor.selectTrack(probe.videoTrack);
+        long[] starts = new long[count];
+        int found = 0;
+        starts[found++] = Long.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            extractor.seekTo(probe.durationUs * i / count, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            long syncTimeUs = extractor.getSampleTime();
+            // Sparse sync samples can map several split points onto the same one
+            if (syncTimeUs > 0 && syncTimeUs > starts[found - 1]) {
+                starts[found++] = syncTimeUs;
+            }
+        }
+        extractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+
+        if (found < 2) {
+            return null;
+        }
+        Log.d(TAG, "Splitting into " + found + " segments at " + Arrays.toString(Arrays.copyOfRange(starts, 1, found)));
+        return Arrays.copyOf(starts, found);
+    }
+
+    private static int maxSupportedInstances(MediaFormat format, boolean encoder) {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        String name = encoder ? codecList.findEncoderForFormat(format) : codecList.findDecoderForFormat(format);
+        if (name == null) {
+            return 1;
+        }
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        for (MediaCodecInfo info : codecList.getCodecInfos()) {
+            if (info.getName().equals(name)) {
+                return info.getCapabilitiesForType(mime).getMaxSupportedInstances();
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Transcodes each segment concurrently on its own codec pair, then stitches the
+     * encoded samples into the output with their source timestamps and the source audio.
+     *
+     * If a segment fails or the throttle leaves the normal level, the parallel phase
+     * stops; segments that already finished are kept and the rest are transcoded one
+     * after another on the calling thread, at whatever rate the throttle allows.
+     */
+    private void transcodeSegments(Uri inputUri, VideoInput input, VideoInput.Probe probe, Output output,
+            long[] starts) throws IOException {
+        File outputFile = output.rendition.outputFile;
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            long endUs = i + 1 < starts.length ? starts[i + 1] : Long.MAX_VALUE;
+            segments.add(new Segment(i, starts[i], endUs, new File(outputFile.getParentFile(), outputFile.getName() + ".part" + i)));
+        }
+        ParallelRun run = new ParallelRun(segments, probe.durationUs);
+
+        try {
+            IOException parallelFailure = runSegmentsInParallel(inputUri, probe, output, run);
+            if (parallelFailure != null) {
+                // Cancellation also surfaces as a segment failure; do not carry on after it
+                checkCancelled();
+                int remaining = 0;
+                for (Segment segment : segments) {
+                    remaining += segment.done ? 0 : 1;
+                }
+                Log.w(TAG, "Parallel phase stopped, finishing " + remaining + " of " + segments.size()
+                    + " segments sequentially", parallelFailure);
+                for (Segment segment : segments) {
+                    if (!segment.done) {
+                        segment.reset();
+                        transcodeSegment(inputUri, probe, output, segment, run, false);
                     }
+                }
+            }
+
+            stitchSegments(input, probe, outputFile, segments);
+        } finally {
+            for (Segment segment : segments) {
+                segment.file.delete();
+            }
+        }
+    }
 
+    /**
+     * Runs every segment on its own thread and returns the first failure, or null if all
+     * finished. Returns once no segment thread is running any more.
+     */
+    private IOException runSegmentsInParallel(Uri inputUri, VideoInput.Probe probe, Output output,
+            ParallelRun run) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(run.segments.size());
+        try {
+            // Segments are collected as they finish so the first failure stops the rest early
+            CompletionService<Void> completion = new ExecutorCompletionService<>(pool);
+            for (Segment segment : run.segments) {
+                completion.submit(() -> {
+                    transcodeSegment(inputUri, probe, output, segment, run, true);
+                    return null;
+                });
+            }
+            for (int i = 0; i < run.segments.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    return cause instanceof IOException
+                        ? (IOException) cause
+                        : new IOException("Segment transcode failed", cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for segments");
+                }
+            }
+            return null;
+        } finally {
+            // Segments check for interruption, so the others wind down quickly after a failure
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Transcodes one segment into its file. In the parallel phase the segment gives up as soon as
+     * the throttle leaves the normal level; run sequentially, it is paced by the throttle instead.
+     */
+    private void transcodeSegment(Uri inputUri, VideoInput.Probe probe, Output output, Segment segment,
+            ParallelRun run, boolean parallel) throws IOException {
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        Surface encoderSurface = null;
+        MediaMuxer muxer = null;
+
+        // Extractors on different threads cannot share a descriptor: each read seeks its file offset
+        try (VideoInput input = VideoInput.open(context, inputUri)) {
+            MediaExtractor extractor = input.createExtractor();
+            extractor.selectTrack(probe.videoTrack);
+            SegmentBoundaries boundaries = new SegmentBoundaries(segment.startUs, segment.endUs);
+            extractor.seekTo(boundaries.seekTimeUs(), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            MediaFormat inputVideoFormat = extractor.getTrackFormat(probe.videoTrack);
+            applyOperatingRate(inputVideoFormat);
+
+            encoder = MediaCodec.createEncoderByType(MIME_TYPE_VIDEO);
+            encoder.configure(createEncoderFormat(output), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            encoderSurface = encoder.createInputSurface();
+            encoder.start();
+
+            decoder = MediaCodec.createDecoderByType(inputVideoFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputVideoFormat, encoderSurface, null, 0);
+            decoder.start();
+
+            muxer = new MediaMuxer(segment.file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            int muxerTrack = -1;
+
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean encoderDone = false;
+            long rangeStartUs = Math.max(0, segment.startUs);
+            MediaCodec.BufferInfo decoderInfo = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo encoderInfo = new MediaCodec.BufferInfo();
+            FrameDecimator decimator = new FrameDecimator(output.rendition.settings.frameRate);
+
+            while (!encoderDone) {
+                checkCancelled();
+                // Holding several codec sessions is only worth it while the device runs cool
+                if (parallel && throttle != null
+                        && !CompressionThrottle.LEVEL_NORMAL.equals(throttle.current().level)) {
+                    throw new IOException("Throttled during segment " + segment.index);
+                }
+
+                // Feed the decoder through the next segment's sync sample and its leading pictures
+                if (!inputDone) {
+                    int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        long sampleTime = extractor.getSampleTime();
+                        boolean sync = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                        int sampleSize = boundaries.shouldFeed(sampleTime, sync)
+                            ? extractor.readSampleData(decoder.getInputBuffer(inputIndex), 0)
+                            : -1;
+                        if (sampleSize < 0) {
+                            decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputIndex, 0, sampleSize, sampleTime, 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                if (!decoderDone) {
+                    int outputIndex = decoder.dequeueOutputBuffer(decoderInfo, TIMEOUT_US);
+                    if (outputIndex >= 0) {
+                        boolean endOfStream = (decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                        long presentationTimeUs = decoderInfo.presentationTimeUs;
+                        // Frames decoded from the previous GOP only serve as references
+                        boolean render = (decoderInfo.size > 0 || !endOfStream) && boundaries.keep(presentationTimeUs)
+                            && decimator.shouldRender(presentationTimeUs);
+                        decoder.releaseOutputBuffer(outputIndex, render);
+                        if (render) {
+                            pace();
+                        }
+                        if (endOfStream) {
+                            encoder.signalEndOfInputStream();
+                            decoderDone = true;
+                        }
+                    }
+                }
+
+                int outputIndex = encoder.dequeueOutputBuffer(encoderInfo, TIMEOUT_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    segment.outputFormat = encoder.getOutputFormat();
+                    run.checkConfig(segment);
+                    muxerTrack = muxer.addTrack(segment.outputFormat);
                     muxer.start();
-                    muxerStarted = true;
                 } else if (outputIndex >= 0) {
-                    ByteBuffer outputBuffer = videoEncoder.getOutputBuffer(outputIndex);
-                    if (muxerStarted && outputBuffer != null && encoderInfo.size > 0) {
+                    ByteBuffer outputBuffer = encoder.getOutputBuffer(outputIndex);
+                    boolean codecConfig = (encoderInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                    if (muxerTrack >= 0 && outputBuffer != null && encoderInfo.size > 0 && !codecConfig) {
                         outputBuffer.position(encoderInfo.offset);
                         outputBuffer.limit(encoderInfo.offset + encoderInfo.size);
-                        muxer.writeSampleData(outputVideoTrack, outputBuffer, encoderInfo);
+                        muxer.writeSampleData(muxerTrack, outputBuffer, encoderInfo);
+                        if (segment.firstSampleTimeUs < 0) {
+                            segment.firstSampleTimeUs = encoderInfo.presentationTimeUs;
+                        }
+                        segment.progressUs = Math.max(0, encoderInfo.presentationTimeUs - rangeStartUs);
+                        reportSegmentProgress(run);
                     }
-                    videoEncoder.releaseOutputBuffer(outputIndex, false);
+                    encoder.releaseOutputBuffer(outputIndex, false);
                     if ((encoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                        videoEncoderDone = true;
+                        encoderDone = true;
                     }
                 }
             }
 
-            // Copy audio track directly (no re-encoding)
-            if (audioTrackIndex >= 0 && outputAudioTrack >= 0 && muxerStarted) {
-                audioExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
-                ByteBuffer audioBuffer = ByteBuffer.allocate(1024 * 1024);
-                MediaCodec.BufferInfo audioInfo = new MediaCodec.BufferInfo();
-
-                while (true) {
-                    int sampleSize = audioExtractor.readSampleData(audioBuffer, 0);
-                    if (sampleSize < 0) {
-                        break;
-                    }
-                    audioInfo.offset = 0;
-                    audioInfo.size = sampleSize;
-                    audioInfo.presentationTimeUs = audioExtractor.getSampleTime();
-                    audioInfo.flags = audioExtractor.getSampleFlags();
-                    muxer.writeSampleData(outputAudioTrack, audioBuffer, audioInfo);
-                    audioExtractor.advance();
-                }
+            // Stopped here rather than in finally so a file that failed to finalize is not kept
+            MediaMuxer finished = muxer;
+            muxer = null;
+            try {
+                finished.stop();
+            } finally {
+                finished.release();
             }
-
+            segment.done = true;
         } finally {
-            // Release resources
-            if (videoDecoder != null) {
-                videoDecoder.stop();
-                videoDecoder.release();
-            }
-            if (videoEncoder != null) {
-                videoEncoder.stop();
-                videoEncoder.release();
+            if (decoder != null) {
+                try {
+                    decoder.stop();
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "Error stopping decoder", e);
+                }
+                decoder.release();
             }
-            if (audioDecoder != null) {
-                audioDecoder.stop();
-                audioDecoder.release();
+            if (encoder != null) {
+                try {
+                    encoder.stop();
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "Error stopping encoder", e);
+                }
+                encoder.release();
             }
-            if (audioEncoder != null) {
-                audioEncoder.stop();
-                audioEncoder.release();
+            if (encoderSurface != null) {
+                encoderSurface.release();
             }
             if (muxer != null) {
                 try {
@@ -280,20 +888,169 @@ public class VideoCompressor {
                     Log.w(TAG, "Error stopping muxer", e);
                 }
             }
-            videoExtractor.release();
-            audioExtractor.release();
         }
     }
 
-    private int findTrack(MediaExtractor extractor, String mimePrefix) {
-        int trackCount = extractor.getTrackCount();
-        for (int i = 0; i < trackCount; i++) {
-            MediaFormat format = extractor.getTrackFormat(i);
-            String mime = format.getString(MediaFormat.KEY_MIME);
-            if (mime != null && mime.startsWith(mimePrefix)) {
-                return i;
+    /**
+     * Concatenates the segment files into the output and copies the source audio next to them.
+     */
+    private void stitchSegments(VideoInput input, VideoInput.Probe probe, File outputFile, List<Segment> segments)
+            throws IOException {
+        MediaFormat videoFormat = segments.get(0).outputFormat;
+        for (Segment segment : segments) {
+            if (segment.outputFormat == null || segment.firstSampleTimeUs < 0) {
+                throw new IOException("Segment " + segment.index + " produced no frames");
+            }
+            // One track has one set of parameter sets, so every encoder must have produced the same
+            if (!sameCodecConfig(videoFormat, segment.outputFormat)) {
+                throw new IOException("Segment " + segment.index + " has a different codec config");
             }
         }
-        return -1;
+
+        MediaExtractor audioExtractor = null;
+        MediaFormat audioFormat = null;
+        if (probe.audioTrack >= 0) {
+            audioExtractor = input.createExtractor();
+            audioExtractor.selectTrack(probe.audioTrack);
+            audioFormat = audioExtractor.getTrackFormat(probe.audioTrack);
+        }
+
+        MediaMuxer muxer = new MediaMuxer(outputFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            if (probe.rotation != 0) {
+                muxer.setOrientationHint(probe.rotation);
+            }
+            int videoTrack = muxer.addTrack(videoFormat);
+            int audioTrack = audioFormat != null ? muxer.addTrack(audioFormat) : -1;
+            muxer.start();
+
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_BUFFER_SIZE);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            for (Segment segment : segments) {
+                MediaExtractor extractor = new MediaExtractor();
+                try {
+                    extractor.setDataSource(segment.file.getAbsolutePath());
+                    extractor.selectTrack(0);
+                    // The segment file may rebase its timestamps; put them back on the source timeline
+                    long offsetUs = segment.firstSampleTimeUs - extractor.getSampleTime();
+                    copySamples(extractor, muxer, videoTrack, buffer, info, offsetUs);
+                } finally {
+                    extractor.release();
+                }
+            }
+
+            // Copy audio track directly (no re-encoding)
+            if (audioExtractor != null) {
+                audioExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                copySamples(audioExtractor, muxer, audioTrack, buffer, info, 0);
+            }
+        } finally {
+            try {
+                muxer.stop();
+                muxer.release();
+            } catch (Exception e) {
+                Log.w(TAG, "Error stopping muxer", e);
+            }
+        }
+    }
+
+    private static void copySamples(MediaExtractor extractor, MediaMuxer muxer, int track, ByteBuffer buffer,
+            MediaCodec.BufferInfo info, long offsetUs) {
+        while (true) {
+            int sampleSize = extractor.readSampleData(buffer, 0);
+            if (sampleSize < 0) {
+                break;
+            }
+            info.offset = 0;
+            info.size = sampleSize;
+            info.presentationTimeUs = extractor.getSampleTime() + offsetUs;
+            info.flags = extractor.getSampleFlags();
+            muxer.writeSampleData(track, buffer, info);
+            extractor.advance();
+        }
+    }
+
+    private static boolean sameCodecConfig(MediaFormat a, MediaFormat b) {
+        for (String key : new String[]{"csd-0", "csd-1"}) {
+            ByteBuffer first = a.containsKey(key) ? a.getByteBuffer(key) : null;
+            ByteBuffer second = b.containsKey(key) ? b.getByteBuffer(key) : null;
+            if (!Objects.equals(first, second)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reportSegmentProgress(ParallelRun run) {
+        synchronized (run) {
+            long doneUs = 0;
+            for (Segment segment : run.segments) {
+                doneUs += segment.progressUs;
+            }
+            run.progress = reportProgress(doneUs, run.durationUs, run.progress);
+        }
+    }
+
+    /**
+     * Hints the codec at the throttled operating rate so it can pick lower clocks.
+     */
+    private void applyOperatingRate(MediaFormat format) {
+        if (throttle == null) {
+            return;
+        }
+        CompressionThrottle.Decision decision = throttle.current();
+        if (decision.operatingRate > 0) {
+            format.setInteger(MediaFormat.KEY_OPERATING_RATE, decision.operatingRate);
+            // Non-realtime priority
+            format.setInteger(MediaFormat.KEY_PRIORITY, 1);
+        }
+    }
+
+    /**
+     * Sleeps as needed so rendered frames do not exceed the throttled operating rate.
+     * The codec hint alone is advisory, so this is what actually bounds the heat.
+     */
+    private void pace() {
+        long aheadNs = reservePaceSlot();
+        if (aheadNs > 0) {
+            try {
+                Thread.sleep(aheadNs / 1_000_000, (int) (aheadNs % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Claims the next frame slot in the shared budget and returns how long to wait for it.
+     * Only the bookkeeping is locked, so concurrent callers do not sleep behind each other.
+     */
+    private synchronized long reservePaceSlot() {
+        if (throttle == null) {
+            return 0;
+        }
+        int rate = throttle.current().operatingRate;
+        if (rate != pacedRate) {
+            pacedRate = rate;
+            paceStartNs = System.nanoTime();
+            pacedFrames = 0;
+        }
+        if (rate <= 0) {
+            return 0;
+        }
+        pacedFrames++;
+        return paceStartNs + pacedFrames * 1_000_000_000L / rate - System.nanoTime();
+    }
+
+    private int reportProgress(long presentationTimeUs, long durationUs, int lastProgress) {
+        if (progressListener == null || durationUs <= 0) {
+            return lastProgress;
+        }
+        int percent = (int) Math.min(99, presentationTimeUs * 100 / durationUs);
+        if (percent > lastProgress) {
+            progressListener.onProgress(percent);
+            return percent;
+        }
+        return lastProgress;
     }
 }
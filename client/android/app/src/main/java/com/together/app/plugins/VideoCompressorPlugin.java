@@ -3,70 +3,247 @@ package com.together.app.plugins;
 import android.net.Uri;
 import android.util.Log;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import com.together.app.TogetherApplication;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @CapacitorPlugin(name = "VideoCompressor")
-public class VideoCompressorPlugin extends Plugin {
+public class VideoCompressorPlugin extends Plugin implements CompressionQueue.Listener {
     private static final String TAG = "VideoCompressor";
+    private static final String EVENT_PROGRESS = "compressionProgress";
+    private static final String EVENT_COMPLETE = "compressionComplete";
+    private static final String EVENT_THROTTLE = "compressionThrottle";
+
+    /** Calls still waiting on their job, keyed by job id. Lost if the process dies. */
+    private final Map<String, PluginCall> pendingCalls = new ConcurrentHashMap<>();
+    private CompressionQueue queue;
+
+    @Override
+    public void load() {
+        queue = CompressionQueue.getInstance(getContext());
+        queue.setListener(this);
+
+        // Reading the queue touches disk, so keep it off the bridge startup path
+        TogetherApplication.getBackgroundExecutor().execute(this::deliverFinishedJobs);
+    }
+
+    /**
+     * Re-emits jobs that finished while no web layer was attached.
+     */
+    private void deliverFinishedJobs() {
+        for (CompressionQueue.Job job : queue.list()) {
+            if (job.isFinished() && !job.delivered) {
+                notifyListeners(EVENT_COMPLETE, toJSObject(job), true);
+            }
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        queue.setListener(null);
+        super.handleOnDestroy();
+    }
 
     @PluginMethod
     public void compress(PluginCall call) {
         String path = call.getString("path");
         String quality = call.getString("quality", "medium");
+        String previewQuality = call.getString("previewQuality");
+        boolean lowPriority = "low".equals(call.getString("priority", "normal"));
 
         if (path == null || path.isEmpty()) {
             call.reject("Path is required");
             return;
         }
 
-        Log.d(TAG, "Starting compression: path=" + path + ", quality=" + quality);
+        Log.d(TAG, "Queueing compression: path=" + path + ", quality=" + quality);
 
         // Get compression settings based on quality
         VideoCompressor.Settings settings = getSettings(quality);
+        VideoCompressor.Settings previewSettings = previewQuality != null ? getSettings(previewQuality) : null;
+
+        // Reading and writing the queue touches disk
+        TogetherApplication.getBackgroundExecutor().execute(() -> {
+            try {
+                Uri inputUri = PluginFiles.parseUri(path);
 
-        // Run compression in background thread
-        getActivity().runOnUiThread(() -> {
-            new Thread(() -> {
-                try {
-                    Uri inputUri = parseUri(path);
-                    File outputFile = createOutputFile();
-
-                    VideoCompressor compressor = new VideoCompressor(getContext());
-                    VideoCompressor.Result result = compressor.compress(inputUri, outputFile, settings);
-
-                    JSObject ret = new JSObject();
-                    ret.put("path", outputFile.getAbsolutePath());
-                    ret.put("size", result.size);
-                    ret.put("duration", result.duration);
-
-                    Log.d(TAG, "Compression complete: size=" + result.size + ", duration=" + result.duration);
-                    call.resolve(ret);
-                } catch (Exception e) {
-                    Log.e(TAG, "Compression failed", e);
-                    call.reject("Compression failed: " + e.getMessage(), e);
+                // Work left over from before a process death is picked up, not redone
+                CompressionQueue.Job existing = queue.findReusable(inputUri.toString(), settings, previewSettings,
+                    lowPriority, pendingCalls.keySet());
+                if (existing != null && pendingCalls.putIfAbsent(existing.id, call) == null) {
+                    Log.d(TAG, "Reusing job " + existing.id + " (" + existing.state + ")");
+                    settleIfFinished(existing.id);
+                    return;
                 }
-            }).start();
+
+                File outputFile = createOutputFile("");
+                // The preview is encoded from the same decode, so it costs no extra extraction
+                File previewFile = previewSettings != null ? createOutputFile("_preview") : null;
+                CompressionQueue.Job job = queue.enqueue(inputUri.toString(), outputFile, settings,
+                    previewFile, previewSettings, lowPriority);
+                pendingCalls.put(job.id, call);
+                CompressionWorker.schedule(getContext(), job.id, lowPriority);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to queue compression", e);
+                call.reject("Compression failed: " + e.getMessage(), e);
+            }
         });
     }
 
-    private Uri parseUri(String path) {
-        if (path.startsWith("content://") || path.startsWith("file://")) {
-            return Uri.parse(path);
+    /**
+     * Settles the call waiting on a reused job if the job has already finished, including
+     * when it finished between the lookup and the call being registered.
+     */
+    private void settleIfFinished(String jobId) {
+        CompressionQueue.Job job = queue.get(jobId);
+        if (job == null || job.isFinished()) {
+            settle(jobId, job);
+        }
+    }
+
+    /**
+     * Lists every job in the queue, including ones queued or finished before the process died.
+     */
+    @PluginMethod
+    public void getJobs(PluginCall call) {
+        JSArray jobs = new JSArray();
+        for (CompressionQueue.Job job : queue.list()) {
+            jobs.put(toJSObject(job));
+        }
+        JSObject ret = new JSObject();
+        ret.put("jobs", jobs);
+        call.resolve(ret);
+    }
+
+    /**
+     * Acknowledges a finished job and removes it from the queue. With {@code deleteOutput}
+     * the compressed files are deleted too, once they have been uploaded or abandoned.
+     */
+    @PluginMethod
+    public void removeJob(PluginCall call) {
+        String jobId = call.getString("jobId");
+        if (jobId == null || jobId.isEmpty()) {
+            call.reject("jobId is required");
+            return;
+        }
+        CompressionQueue.Job job = queue.get(jobId);
+        if (job != null && !job.isFinished()) {
+            call.reject("Job is still running");
+            return;
+        }
+        if (job != null && call.getBoolean("deleteOutput", false)) {
+            CompressionQueue.deleteOutputs(job);
+        }
+        queue.remove(jobId);
+        call.resolve();
+    }
+
+    /**
+     * Returns the current thermal / battery throttle decision.
+     */
+    @PluginMethod
+    public void getThrottleState(PluginCall call) {
+        call.resolve(toJSObject(new CompressionThrottle(getContext()).refresh()));
+    }
+
+    @Override
+    public void onJobUpdated(CompressionQueue.Job job) {
+        if (!job.isFinished() || job.delivered) {
+            return;
+        }
+
+        if (!settle(job.id, job)) {
+            notifyListeners(EVENT_COMPLETE, toJSObject(job), true);
+        }
+    }
+
+    /**
+     * Settles the call waiting on the job; returns false if none was waiting.
+     */
+    private boolean settle(String jobId, CompressionQueue.Job job) {
+        PluginCall call = pendingCalls.remove(jobId);
+        if (call == null) {
+            return false;
+        }
+
+        if (job == null) {
+            call.reject("Compression job was removed");
+        } else if (CompressionQueue.STATE_SUCCEEDED.equals(job.state)) {
+            Log.d(TAG, "Compression complete: size=" + job.size + ", duration=" + job.duration);
+            call.resolve(toJSObject(job));
+        } else {
+            call.reject("Compression failed: " + job.error);
+        }
+        if (job != null && !job.delivered) {
+            synchronized (job) {
+                job.delivered = true;
+            }
+            queue.update(job);
+        }
+        return true;
+    }
+
+    @Override
+    public void onJobProgress(CompressionQueue.Job job, int percent) {
+        JSObject ret = new JSObject();
+        ret.put("jobId", job.id);
+        ret.put("progress", percent);
+        notifyListeners(EVENT_PROGRESS, ret);
+    }
+
+    @Override
+    public void onJobThrottled(CompressionQueue.Job job, CompressionThrottle.Decision decision) {
+        JSObject ret = toJSObject(decision);
+        ret.put("jobId", job.id);
+        ret.put("paused", job.lowPriority && decision.pauseLowPriority
+            && CompressionQueue.STATE_QUEUED.equals(job.state));
+        notifyListeners(EVENT_THROTTLE, ret);
+    }
+
+    private JSObject toJSObject(CompressionThrottle.Decision decision) {
+        JSObject ret = new JSObject();
+        ret.put("level", decision.level);
+        ret.put("reason", decision.reason);
+        ret.put("frameRate", decision.frameRate);
+        ret.put("operatingRate", decision.operatingRate);
+        ret.put("pauseLowPriority", decision.pauseLowPriority);
+        return ret;
+    }
+
+    private JSObject toJSObject(CompressionQueue.Job job) {
+        JSObject ret = new JSObject();
+        ret.put("jobId", job.id);
+        ret.put("state", job.state);
+        ret.put("path", job.outputPath);
+        ret.put("size", job.size);
+        ret.put("duration", job.duration);
+        if (job.previewPath != null) {
+            JSObject preview = new JSObject();
+            preview.put("path", job.previewPath);
+            preview.put("size", job.previewSize);
+            ret.put("preview", preview);
+        }
+        if (job.error != null) {
+            ret.put("error", job.error);
+        }
+        if (job.throttleReason != null) {
+            ret.put("throttleReason", job.throttleReason);
         }
-        // Assume it's a file path
-        return Uri.fromFile(new File(path));
+        return ret;
     }
 
-    private File createOutputFile() {
-        File cacheDir = getContext().getCacheDir();
-        String filename = "compressed_" + System.currentTimeMillis() + ".mp4";
-        return new File(cacheDir, filename);
+    private File createOutputFile(String suffix) throws IOException {
+        // createTempFile reserves a unique name, so two calls in the same millisecond never share an output
+        return File.createTempFile("compressed_", suffix + ".mp4", getContext().getCacheDir());
     }
 
     private VideoCompressor.Settings getSettings(String quality) {
@@ -0,0 +1,174 @@
+package com.together.app.plugins;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An input video opened once and shared by every extractor that reads it.
+ *
+ * content:// URIs cost a provider round trip per open, so the descriptor is
+ * opened a single time and each {@link MediaExtractor} reads it at its own
+ * offsets, within the byte range the provider's asset descriptor covers.
+ * Metadata comes from the extractor's track formats rather than
+ * MediaMetadataRetriever, and is cached per input so retries skip the probe.
+ */
+class VideoInput implements Closeable {
+    private static final String TAG = "VideoInput";
+    private static final int PROBE_CACHE_SIZE = 16;
+    /** What MediaExtractor.setDataSource(FileDescriptor) passes when the length is unknown. */
+    private static final long WHOLE_FILE = 0x7ffffffffffffffL;
+
+    private static final LruCache<String, Probe> probeCache = new LruCache<>(PROBE_CACHE_SIZE);
+
+    /**
+     * Track layout and display metadata of the input.
+     */
+    static class Probe {
+        final int videoTrack;
+        final int audioTrack;
+        final int width;
+        final int height;
+        final int rotation;
+        final long durationUs;
+
+        Probe(int videoTrack, int audioTrack, int width, int height, int rotation, long durationUs) {
+            this.videoTrack = videoTrack;
+            this.audioTrack = audioTrack;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.durationUs = durationUs;
+        }
+
+        /** Width as displayed, i.e. after applying the rotation. */
+        int displayWidth() {
+            return rotation == 90 || rotation == 270 ? height : width;
+        }
+
+        int displayHeight() {
+            return rotation == 90 || rotation == 270 ? width : height;
+        }
+    }
+
+    private final AssetFileDescriptor descriptor;
+    private final long startOffset;
+    private final long length;
+    private final String cacheKey;
+    private final List<MediaExtractor> extractors = new ArrayList<>();
+
+    private VideoInput(AssetFileDescriptor descriptor, long startOffset, long length, String cacheKey) {
+        this.descriptor = descriptor;
+        this.startOffset = startOffset;
+        this.length = length;
+        this.cacheKey = cacheKey;
+    }
+
+    static VideoInput open(Context context, Uri uri) throws IOException {
+        // Providers may serve the video as a range of a larger file, so honour the asset's offset
+        AssetFileDescriptor descriptor = context.getContentResolver().openAssetFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        long startOffset = descriptor.getStartOffset();
+        long length = descriptor.getLength();
+        if (length == AssetFileDescriptor.UNKNOWN_LENGTH && startOffset == 0) {
+            length = descriptor.getParcelFileDescriptor().getStatSize();
+        }
+        // The size guards against a provider reusing a URI for different content;
+        // without one there is nothing to tell versions apart, so the probe is not cached
+        String cacheKey = length >= 0 ? uri + "#" + startOffset + "+" + length : null;
+        return new VideoInput(descriptor, startOffset, length, cacheKey);
+    }
+
+    /**
+     * Creates an extractor over the shared descriptor. It is released with this input.
+     */
+    MediaExtractor createExtractor() throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(descriptor.getFileDescriptor(), startOffset, length >= 0 ? length : WHOLE_FILE);
+        } catch (IOException e) {
+            extractor.release();
+            throw e;
+        }
+        extractors.add(extractor);
+        return extractor;
+    }
+
+    /**
+     * Returns the cached probe for this input, or reads it from {@code extractor}'s track formats.
+     */
+    Probe probe(MediaExtractor extractor) throws IOException {
+        Probe probe = cacheKey != null ? probeCache.get(cacheKey) : null;
+        if (probe != null) {
+            return probe;
+        }
+
+        int videoTrack = -1;
+        int audioTrack = -1;
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime == null) {
+                continue;
+            }
+            if (videoTrack < 0 && mime.startsWith("video/")) {
+                videoTrack = i;
+            } else if (audioTrack < 0 && mime.startsWith("audio/")) {
+                audioTrack = i;
+            }
+        }
+        if (videoTrack < 0) {
+            throw new IOException("No video track found");
+        }
+
+        MediaFormat videoFormat = extractor.getTrackFormat(videoTrack);
+        long durationUs = getLong(videoFormat, MediaFormat.KEY_DURATION);
+        if (durationUs <= 0 && audioTrack >= 0) {
+            durationUs = getLong(extractor.getTrackFormat(audioTrack), MediaFormat.KEY_DURATION);
+        }
+
+        probe = new Probe(
+            videoTrack,
+            audioTrack,
+            getInt(videoFormat, MediaFormat.KEY_WIDTH, 1920),
+            getInt(videoFormat, MediaFormat.KEY_HEIGHT, 1080),
+            getInt(videoFormat, MediaFormat.KEY_ROTATION, 0),
+            Math.max(0, durationUs)
+        );
+        if (cacheKey != null) {
+            probeCache.put(cacheKey, probe);
+        }
+        return probe;
+    }
+
+    @Override
+    public void close() {
+        for (MediaExtractor extractor : extractors) {
+            extractor.release();
+        }
+        extractors.clear();
+        try {
+            descriptor.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing input", e);
+        }
+    }
+
+    private static int getInt(MediaFormat format, String key, int fallback) {
+        return format.containsKey(key) ? format.getInteger(key) : fallback;
+    }
+
+    private static long getLong(MediaFormat format, String key) {
+        return format.containsKey(key) ? format.getLong(key) : 0;
+    }
+}
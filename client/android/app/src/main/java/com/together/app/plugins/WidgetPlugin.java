@@ -2,13 +2,23 @@ package com.together.app.plugins;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import com.together.app.TogetherApplication;
 import com.together.app.widget.AnniversaryWidgetProvider;
+import com.together.app.widget.WidgetAvatars;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Capacitor 插件：用于同步数据到小部件并触发更新
@@ -16,47 +26,61 @@ import com.together.app.widget.AnniversaryWidgetProvider;
 @CapacitorPlugin(name = "Widget")
 public class WidgetPlugin extends Plugin {
 
+    private static final String TAG = "WidgetPlugin";
     private static final String PREFS_NAME = "CapacitorStorage";
     private static final String KEY_WIDGET_DATA = "widget_data";
+    /** 已渲染头像对应的来源（URL 或本地路径），来源不变时不再重新渲染 */
+    private static final String KEY_AVATAR_SOURCE = "widget_avatar_source_";
 
     /**
      * 更新小部件数据
      * 接收：anniversaryDate, user1Name, user2Name, user1Avatar, user2Avatar
+     * 可选：user1AvatarPath / user2AvatarPath（本地文件，优先于 URL）
+     * 头像在原生侧预渲染为圆形小图保存，小部件刷新时直接读取，无需联网；头像不变时跳过
      */
     @PluginMethod
     public void updateWidgetData(PluginCall call) {
-        try {
-            String anniversaryDate = call.getString("anniversaryDate");
-            String user1Name = call.getString("user1Name");
-            String user2Name = call.getString("user2Name");
-            String user1Avatar = call.getString("user1Avatar");
-            String user2Avatar = call.getString("user2Avatar");
-
-            // 构建 JSON 字符串
-            StringBuilder json = new StringBuilder();
-            json.append("{");
-            json.append("\"anniversaryDate\":").append(toJsonValue(anniversaryDate)).append(",");
-            json.append("\"user1Name\":").append(toJsonValue(user1Name)).append(",");
-            json.append("\"user2Name\":").append(toJsonValue(user2Name)).append(",");
-            json.append("\"user1Avatar\":").append(toJsonValue(user1Avatar)).append(",");
-            json.append("\"user2Avatar\":").append(toJsonValue(user2Avatar));
-            json.append("}");
-
-            // 保存到 SharedPreferences
-            Context context = getContext();
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            prefs.edit().putString(KEY_WIDGET_DATA, json.toString()).apply();
-
-            // 触发小部件更新
-            AnniversaryWidgetProvider.updateAllWidgets(context);
-
-            JSObject result = new JSObject();
-            result.put("success", true);
-            call.resolve(result);
-
-        } catch (Exception e) {
-            call.reject("Failed to update widget data", e);
-        }
+        // 头像解码和渲染放到后台线程
+        TogetherApplication.getBackgroundExecutor().execute(() -> {
+            try {
+                String anniversaryDate = call.getString("anniversaryDate");
+                String user1Name = call.getString("user1Name");
+                String user2Name = call.getString("user2Name");
+                String user1Avatar = call.getString("user1Avatar");
+                String user2Avatar = call.getString("user2Avatar");
+                String user1AvatarFile = prepareAvatar(1, user1Avatar, call.getString("user1AvatarPath"));
+                String user2AvatarFile = prepareAvatar(2, user2Avatar, call.getString("user2AvatarPath"));
+
+                // 构建 JSON 字符串
+                StringBuilder json = new StringBuilder();
+                json.append("{");
+                json.append("\"anniversaryDate\":").append(toJsonValue(anniversaryDate)).append(",");
+                json.append("\"user1Name\":").append(toJsonValue(user1Name)).append(",");
+                json.append("\"user2Name\":").append(toJsonValue(user2Name)).append(",");
+                json.append("\"user1Avatar\":").append(toJsonValue(user1Avatar)).append(",");
+                json.append("\"user2Avatar\":").append(toJsonValue(user2Avatar)).append(",");
+                json.append("\"user1AvatarFile\":").append(toJsonValue(user1AvatarFile)).append(",");
+                json.append("\"user2AvatarFile\":").append(toJsonValue(user2AvatarFile));
+                json.append("}");
+
+                // 保存到 SharedPreferences
+                Context context = getContext();
+                SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                prefs.edit().putString(KEY_WIDGET_DATA, json.toString()).apply();
+
+                // 触发小部件更新
+                AnniversaryWidgetProvider.updateAllWidgets(context);
+
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("user1AvatarCached", user1AvatarFile != null);
+                result.put("user2AvatarCached", user2AvatarFile != null);
+                call.resolve(result);
+
+            } catch (Exception e) {
+                call.reject("Failed to update widget data", e);
+            }
+        });
     }
 
     /**
@@ -84,7 +108,13 @@ public class WidgetPlugin extends Plugin {
         try {
             Context context = getContext();
             SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            prefs.edit().remove(KEY_WIDGET_DATA).apply();
+            prefs.edit()
+                .remove(KEY_WIDGET_DATA)
+                .remove(KEY_AVATAR_SOURCE + 1)
+                .remove(KEY_AVATAR_SOURCE + 2)
+                .apply();
+            WidgetAvatars.delete(context, 1);
+            WidgetAvatars.delete(context, 2);
 
             // 触发小部件更新（显示默认状态）
             AnniversaryWidgetProvider.updateAllWidgets(context);
@@ -98,6 +128,72 @@ public class WidgetPlugin extends Plugin {
         }
     }
 
+    /**
+     * 将头像预渲染为圆形小图并保存，返回文件路径
+     * 优先使用本地文件，否则下载 URL；来源与上次渲染相同时直接复用已保存的文件
+     * 未提供或处理失败时删除旧文件并返回 null，小部件会回退为下载 URL
+     */
+    private String prepareAvatar(int index, String url, String path) {
+        Context context = getContext();
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String source = path != null && !path.isEmpty() ? path : url;
+        File file = WidgetAvatars.getAvatarFile(context, index);
+        if (source != null && !source.isEmpty()
+                && source.equals(prefs.getString(KEY_AVATAR_SOURCE + index, null)) && file.isFile()) {
+            return file.getAbsolutePath();
+        }
+
+        try {
+            int size = WidgetAvatars.getAvatarSizePx(context);
+            Bitmap bitmap = null;
+            if (source != null && !source.isEmpty()) {
+                // WebView 转换过的本地文件地址也是 http(s)，按本地文件解码
+                boolean remote = (source.startsWith("http://") || source.startsWith("https://"))
+                    && !source.contains("/_capacitor_file_");
+                bitmap = remote ? WidgetAvatars.download(source, size) : decodeAvatarPath(source, size);
+            }
+
+            if (bitmap != null) {
+                Bitmap avatar = WidgetAvatars.render(context, bitmap);
+                bitmap.recycle();
+                try {
+                    String saved = WidgetAvatars.save(context, index, avatar).getAbsolutePath();
+                    prefs.edit().putString(KEY_AVATAR_SOURCE + index, source).apply();
+                    return saved;
+                } finally {
+                    avatar.recycle();
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to prepare avatar " + index, e);
+        }
+        prefs.edit().remove(KEY_AVATAR_SOURCE + index).apply();
+        WidgetAvatars.delete(context, index);
+        return null;
+    }
+
+    /**
+     * 解码本地文件形式的头像，支持文件路径、file://、content:// 和 WebView 中转换过的文件地址
+     */
+    private Bitmap decodeAvatarPath(String path, int size) throws IOException {
+        Uri uri = PluginFiles.parseUri(path);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = PluginFiles.openInput(getContext(), uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = WidgetAvatars.calculateInSampleSize(options, size);
+        try (InputStream in = PluginFiles.openInput(getContext(), uri)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
     /**
      * 将字符串转换为 JSON 值
      */
@@ -0,0 +1,201 @@
+package com.together.app.push;
+
+import android.Manifest;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import com.together.app.MainActivity;
+import com.together.app.R;
+import com.together.app.TogetherApplication;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 心跳推送的原生处理：直接发通知和振动，不需要启动 WebView
+ * 短时间内连续收到的心跳会合并为同一条通知，只振动一次
+ * 同一条心跳会以自定义消息和通知两种形式到达，按 notificationId 去重
+ */
+public class HeartbeatNotifier {
+    private static final String TAG = "HeartbeatNotifier";
+    private static final String PREFS_NAME = "heartbeat_store";
+    private static final String KEY_RECENT = "recent";
+    private static final String KEY_LAST_ALERT_AT = "last_alert_at";
+    private static final String KEY_COALESCED_COUNT = "coalesced_count";
+
+    public static final String TYPE_HEARTBEAT = "heartbeat";
+
+    private static final int NOTIFICATION_ID = 0x4842; // "HB"
+    /** Heartbeats within this window update the existing notification silently. */
+    private static final long COALESCE_WINDOW_MS = 10_000;
+    private static final int MAX_RECENT = 20;
+    private static final long[] VIBRATION_PATTERN = {0, 300};
+
+    /**
+     * 收到心跳时通知（仅在应用进程内有 Web 层时使用）
+     */
+    public interface Listener {
+        void onHeartbeat(JSONObject heartbeat);
+    }
+
+    private static volatile Listener listener;
+
+    public static void setListener(Listener l) {
+        listener = l;
+    }
+
+    /**
+     * 处理一条推送，返回 true 表示是心跳（包括已处理过的重复推送）
+     */
+    public static boolean handle(Context context, String title, String message, String extrasJson) {
+        JSONObject extras;
+        try {
+            extras = extrasJson != null ? new JSONObject(extrasJson) : new JSONObject();
+        } catch (JSONException e) {
+            return false;
+        }
+        if (!TYPE_HEARTBEAT.equals(extras.optString("type"))) {
+            return false;
+        }
+        // 应用启动时渠道在后台线程创建，可能还没完成；JPush 展示的通知也用这个渠道
+        TogetherApplication.ensureNotificationChannels(context);
+
+        long now = System.currentTimeMillis();
+        String text = title != null && !title.isEmpty() ? title : message;
+        String notificationId = extras.optString("notificationId", null);
+
+        JSONObject heartbeat = new JSONObject();
+        try {
+            heartbeat.put("notificationId", notificationId);
+            heartbeat.put("title", text);
+            heartbeat.put("receivedAt", now);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to build heartbeat record", e);
+        }
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        boolean coalesce;
+        int count;
+        synchronized (HeartbeatNotifier.class) {
+            if (isRecent(prefs.getString(KEY_RECENT, null), notificationId)) {
+                Log.d(TAG, "Duplicate heartbeat " + notificationId);
+                return true;
+            }
+            long lastAlertAt = prefs.getLong(KEY_LAST_ALERT_AT, 0);
+            coalesce = now - lastAlertAt < COALESCE_WINDOW_MS;
+            count = coalesce ? prefs.getInt(KEY_COALESCED_COUNT, 1) + 1 : 1;
+
+            SharedPreferences.Editor editor = prefs.edit()
+                .putInt(KEY_COALESCED_COUNT, count)
+                .putString(KEY_RECENT, appendRecent(prefs.getString(KEY_RECENT, null), heartbeat).toString());
+            if (!coalesce) {
+                editor.putLong(KEY_LAST_ALERT_AT, now);
+            }
+            editor.apply();
+        }
+
+        postNotification(context, text, count, coalesce);
+
+        Listener l = listener;
+        if (l != null) {
+            l.onHeartbeat(heartbeat);
+        }
+        return true;
+    }
+
+    /**
+     * 读取最近的心跳记录（从旧到新）
+     */
+    public static JSONArray getRecent(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return parseRecent(prefs.getString(KEY_RECENT, null));
+    }
+
+    public static void clear(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .remove(KEY_RECENT)
+            .remove(KEY_COALESCED_COUNT)
+            .remove(KEY_LAST_ALERT_AT)
+            .apply();
+        NotificationManagerCompat.from(context).cancel(NOTIFICATION_ID);
+    }
+
+    private static void postNotification(Context context, String text, int count, boolean coalesce) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                    != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "Notification permission not granted");
+            return;
+        }
+
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            NOTIFICATION_ID,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, TogetherApplication.CHANNEL_ID_HEARTBEAT)
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentTitle(count > 1 ? text + " ×" + count : text)
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setCategory(NotificationCompat.CATEGORY_MESSAGE)
+            .setContentIntent(pendingIntent)
+            .setAutoCancel(true)
+            // Coalesced updates replace the text without buzzing again
+            .setOnlyAlertOnce(coalesce)
+            .setVibrate(VIBRATION_PATTERN);
+
+        try {
+            NotificationManagerCompat.from(context).notify(NOTIFICATION_ID, builder.build());
+        } catch (SecurityException e) {
+            Log.w(TAG, "Failed to post heartbeat notification", e);
+        }
+    }
+
+    private static boolean isRecent(String json, String notificationId) {
+        if (notificationId == null || notificationId.isEmpty()) {
+            return false;
+        }
+        JSONArray recent = parseRecent(json);
+        for (int i = 0; i < recent.length(); i++) {
+            JSONObject item = recent.optJSONObject(i);
+            if (item != null && notificationId.equals(item.optString("notificationId", null))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static JSONArray appendRecent(String json, JSONObject heartbeat) {
+        JSONArray recent = parseRecent(json);
+        recent.put(heartbeat);
+        while (recent.length() > MAX_RECENT) {
+            recent.remove(0);
+        }
+        return recent;
+    }
+
+    private static JSONArray parseRecent(String json) {
+        if (json == null || json.isEmpty()) {
+            return new JSONArray();
+        }
+        try {
+            return new JSONArray(json);
+        } catch (JSONException e) {
+            return new JSONArray();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.together.app.push;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.core.app.NotificationManagerCompat;
+
+/**
+ * 接收 JPush 自定义消息和通知广播，心跳消息直接在原生层处理
+ * 进程存活时两者都会到达：心跳只处理一次，JPush 自己展示的那条通知会被撤掉，
+ * 只保留合并后的心跳通知；进程被杀时由厂商通道展示的通知兜底
+ */
+public class HeartbeatReceiver extends BroadcastReceiver {
+    private static final String TAG = "HeartbeatReceiver";
+
+    // JPushInterface 常量，避免编译期依赖 JPush SDK
+    static final String ACTION_MESSAGE_RECEIVED = "cn.jpush.android.intent.MESSAGE_RECEIVED";
+    static final String EXTRA_TITLE = "cn.jpush.android.TITLE";
+    static final String EXTRA_MESSAGE = "cn.jpush.android.MESSAGE";
+    static final String EXTRA_EXTRA = "cn.jpush.android.EXTRA";
+    static final String ACTION_NOTIFICATION_RECEIVED = "cn.jpush.android.intent.NOTIFICATION_RECEIVED";
+    static final String EXTRA_NOTIFICATION_ID = "cn.jpush.android.NOTIFICATION_ID";
+    static final String EXTRA_NOTIFICATION_TITLE = "cn.jpush.android.NOTIFICATION_CONTENT_TITLE";
+    static final String EXTRA_ALERT = "cn.jpush.android.ALERT";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (ACTION_NOTIFICATION_RECEIVED.equals(intent.getAction())) {
+            onNotificationReceived(context, intent);
+            return;
+        }
+        if (!ACTION_MESSAGE_RECEIVED.equals(intent.getAction())) {
+            return;
+        }
+
+        boolean handled = HeartbeatNotifier.handle(
+            context,
+            intent.getStringExtra(EXTRA_TITLE),
+            intent.getStringExtra(EXTRA_MESSAGE),
+            intent.getStringExtra(EXTRA_EXTRA)
+        );
+        if (!handled) {
+            Log.d(TAG, "Ignoring non-heartbeat message");
+        }
+    }
+
+    private void onNotificationReceived(Context context, Intent intent) {
+        boolean heartbeat = HeartbeatNotifier.handle(
+            context,
+            intent.getStringExtra(EXTRA_NOTIFICATION_TITLE),
+            intent.getStringExtra(EXTRA_ALERT),
+            intent.getStringExtra(EXTRA_EXTRA)
+        );
+        if (heartbeat) {
+            // 合并后的心跳通知已经发出，撤掉 JPush 展示的重复通知
+            NotificationManagerCompat.from(context).cancel(intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0));
+        }
+    }
+}
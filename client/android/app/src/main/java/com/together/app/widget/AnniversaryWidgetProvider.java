@@ -7,12 +7,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
-import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.widget.RemoteViews;
@@ -20,9 +14,6 @@ import android.widget.RemoteViews;
 import com.together.app.MainActivity;
 import com.together.app.R;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -95,14 +86,22 @@ public class AnniversaryWidgetProvider extends AppWidgetProvider {
                         views.setTextViewText(R.id.widget_since_date, sinceText);
                     }
 
+                    // 应用预渲染的头像直接读取本地文件，无需联网
+                    boolean avatar1Ready = setLocalAvatar(views, data.user1AvatarFile, R.id.widget_avatar1);
+                    boolean avatar2Ready = setLocalAvatar(views, data.user2AvatarFile, R.id.widget_avatar2);
+
                     // 先更新文本
                     appWidgetManager.updateAppWidget(appWidgetId, views);
 
-                    // 异步加载头像
-                    loadAvatarAsync(context, appWidgetManager, appWidgetId, views,
-                        data.user1Avatar, R.id.widget_avatar1);
-                    loadAvatarAsync(context, appWidgetManager, appWidgetId, views,
-                        data.user2Avatar, R.id.widget_avatar2);
+                    // 没有本地头像时异步下载
+                    if (!avatar1Ready) {
+                        loadAvatarAsync(context, appWidgetManager, appWidgetId, views,
+                            data.user1Avatar, R.id.widget_avatar1);
+                    }
+                    if (!avatar2Ready) {
+                        loadAvatarAsync(context, appWidgetManager, appWidgetId, views,
+                            data.user2Avatar, R.id.widget_avatar2);
+                    }
 
                     return;
                 }
@@ -146,6 +145,18 @@ public class AnniversaryWidgetProvider extends AppWidgetProvider {
         views.setOnClickPendingIntent(R.id.widget_container, pendingIntent);
     }
 
+    /**
+     * 设置本地预渲染的头像，文件不可用时返回 false
+     */
+    private static boolean setLocalAvatar(RemoteViews views, String avatarFile, int imageViewId) {
+        Bitmap bitmap = WidgetAvatars.load(avatarFile);
+        if (bitmap == null) {
+            return false;
+        }
+        views.setImageViewBitmap(imageViewId, bitmap);
+        return true;
+    }
+
     /**
      * 异步加载头像
      */
@@ -157,10 +168,11 @@ public class AnniversaryWidgetProvider extends AppWidgetProvider {
 
         executor.execute(() -> {
             try {
-                Bitmap bitmap = downloadBitmap(avatarUrl);
+                Bitmap bitmap = WidgetAvatars.download(avatarUrl, WidgetAvatars.getAvatarSizePx(context));
                 if (bitmap != null) {
-                    // 裁剪为圆形
-                    Bitmap circularBitmap = getCircularBitmap(bitmap);
+                    // 裁剪为圆形并缩放到头像尺寸
+                    Bitmap circularBitmap = WidgetAvatars.render(context, bitmap);
+                    bitmap.recycle();
 
                     mainHandler.post(() -> {
                         views.setImageViewBitmap(imageViewId, circularBitmap);
@@ -174,58 +186,6 @@ public class AnniversaryWidgetProvider extends AppWidgetProvider {
         });
     }
 
-    /**
-     * 下载图片
-     */
-    private static Bitmap downloadBitmap(String urlString) {
-        try {
-            URL url = new URL(urlString);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.connect();
-
-            InputStream input = connection.getInputStream();
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
-            input.close();
-            connection.disconnect();
-
-            return bitmap;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    /**
-     * 将 Bitmap 裁剪为圆形
-     */
-    private static Bitmap getCircularBitmap(Bitmap bitmap) {
-        int size = Math.min(bitmap.getWidth(), bitmap.getHeight());
-        Bitmap output = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
-
-        Canvas canvas = new Canvas(output);
-
-        final Paint paint = new Paint();
-        final Rect rect = new Rect(0, 0, size, size);
-
-        paint.setAntiAlias(true);
-        canvas.drawARGB(0, 0, 0, 0);
-        canvas.drawCircle(size / 2f, size / 2f, size / 2f, paint);
-
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-
-        // 居中裁剪
-        int left = (bitmap.getWidth() - size) / 2;
-        int top = (bitmap.getHeight() - size) / 2;
-        Rect srcRect = new Rect(left, top, left + size, top + size);
-
-        canvas.drawBitmap(bitmap, srcRect, rect, paint);
-
-        return output;
-    }
-
     /**
      * 计算两个日期之间的天数
      */
@@ -246,6 +206,8 @@ public class AnniversaryWidgetProvider extends AppWidgetProvider {
             data.user2Name = extractJsonString(json, "user2Name");
             data.user1Avatar = extractJsonString(json, "user1Avatar");
             data.user2Avatar = extractJsonString(json, "user2Avatar");
+            data.user1AvatarFile = extractJsonString(json, "user1AvatarFile");
+            data.user2AvatarFile = extractJsonString(json, "user2AvatarFile");
 
             return data;
         } catch (Exception e) {
@@ -312,5 +274,7 @@ public class AnniversaryWidgetProvider extends AppWidgetProvider {
         String user2Name;
         String user1Avatar;
         String user2Avatar;
+        String user1AvatarFile;
+        String user2AvatarFile;
     }
 }
@@ -0,0 +1,180 @@
+package com.together.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * 小部件头像：裁剪为圆形并缩放到头像尺寸，预渲染结果保存在应用私有目录
+ */
+public class WidgetAvatars {
+    private static final String TAG = "WidgetAvatars";
+    private static final String AVATAR_DIR = "widget";
+    /** 与 widget_anniversary.xml 中头像 ImageView 的尺寸一致 */
+    private static final int AVATAR_SIZE_DP = 52;
+    private static final int TIMEOUT_MS = 5000;
+
+    private WidgetAvatars() {
+    }
+
+    /**
+     * 头像的像素尺寸
+     */
+    public static int getAvatarSizePx(Context context) {
+        return Math.round(AVATAR_SIZE_DP * context.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * 第 index 个用户（1 或 2）预渲染头像的保存位置
+     */
+    public static File getAvatarFile(Context context, int index) {
+        return new File(new File(context.getFilesDir(), AVATAR_DIR), "avatar" + index + ".png");
+    }
+
+    /**
+     * 解码时使用的采样率，避免大图整张解码
+     */
+    public static int calculateInSampleSize(BitmapFactory.Options bounds, int targetSize) {
+        int shortest = Math.min(bounds.outWidth, bounds.outHeight);
+        int sampleSize = 1;
+        while (shortest / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 下载头像并按头像尺寸采样解码，失败时返回 null
+     */
+    public static Bitmap download(String urlString, int targetSize) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(urlString).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.w(TAG, "Avatar download failed with status " + connection.getResponseCode());
+                return null;
+            }
+
+            // 头像文件很小，读入内存后先读尺寸再采样解码
+            byte[] bytes;
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                bytes = out.toByteArray();
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(options, targetSize);
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IOException e) {
+            Log.w(TAG, "Avatar download failed: " + urlString, e);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 居中裁剪为圆形，并缩放到头像尺寸
+     */
+    public static Bitmap render(Context context, Bitmap bitmap) {
+        int size = Math.min(getAvatarSizePx(context), Math.min(bitmap.getWidth(), bitmap.getHeight()));
+        return getCircularBitmap(bitmap, size);
+    }
+
+    /**
+     * 将 Bitmap 居中裁剪为直径 size 的圆形
+     */
+    public static Bitmap getCircularBitmap(Bitmap bitmap, int size) {
+        Bitmap output = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+
+        Canvas canvas = new Canvas(output);
+
+        final Paint paint = new Paint();
+        final Rect rect = new Rect(0, 0, size, size);
+
+        paint.setAntiAlias(true);
+        paint.setFilterBitmap(true);
+        canvas.drawARGB(0, 0, 0, 0);
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, paint);
+
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+
+        // 居中裁剪
+        int crop = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        int left = (bitmap.getWidth() - crop) / 2;
+        int top = (bitmap.getHeight() - crop) / 2;
+        Rect srcRect = new Rect(left, top, left + crop, top + crop);
+
+        canvas.drawBitmap(bitmap, srcRect, rect, paint);
+
+        return output;
+    }
+
+    /**
+     * 保存预渲染的头像（先写临时文件再重命名，小部件不会读到半个文件）
+     */
+    public static File save(Context context, int index, Bitmap avatar) throws IOException {
+        File file = getAvatarFile(context, index);
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            avatar.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+        return file;
+    }
+
+    /**
+     * 读取预渲染的头像，文件不存在或无法解码时返回 null
+     */
+    public static Bitmap load(String path) {
+        if (path == null || path.isEmpty() || !new File(path).isFile()) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(path);
+        if (bitmap == null) {
+            Log.w(TAG, "Failed to decode avatar: " + path);
+        }
+        return bitmap;
+    }
+
+    public static void delete(Context context, int index) {
+        getAvatarFile(context, index).delete();
+    }
+}
@@ -0,0 +1,57 @@
+package com.together.app.plugins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FrameDecimatorTest {
+
+    private static int countRendered(FrameDecimator decimator, double sourceFps, int seconds) {
+        int rendered = 0;
+        int frames = (int) Math.round(sourceFps * seconds);
+        for (int i = 0; i < frames; i++) {
+            long pts = Math.round(i * 1_000_000.0 / sourceFps);
+            if (decimator.shouldRender(pts)) {
+                rendered++;
+            }
+        }
+        return rendered;
+    }
+
+    @Test
+    public void highFrameRateSourcesAreThinnedToTarget() {
+        assertEquals(300, countRendered(new FrameDecimator(30), 60, 10));
+        assertEquals(300, countRendered(new FrameDecimator(30), 120, 10));
+        assertEquals(300, countRendered(new FrameDecimator(30), 240, 10));
+    }
+
+    @Test
+    public void ntscRatesSurviveTimestampJitter() {
+        assertEquals(300, countRendered(new FrameDecimator(30), 59.94, 10), 1);
+        assertEquals(300, countRendered(new FrameDecimator(30), 29.97, 10), 1);
+    }
+
+    @Test
+    public void lowerFrameRateSourcesKeepEveryFrame() {
+        assertEquals(240, countRendered(new FrameDecimator(30), 24, 10));
+        assertEquals(250, countRendered(new FrameDecimator(30), 25, 10));
+    }
+
+    @Test
+    public void gapsDoNotCauseBursts() {
+        FrameDecimator decimator = new FrameDecimator(30);
+        assertTrue(decimator.shouldRender(0));
+        // One second with no frames, then a 60 fps run
+        assertTrue(decimator.shouldRender(1_000_000));
+        assertFalse(decimator.shouldRender(1_016_667));
+        assertTrue(decimator.shouldRender(1_033_333));
+    }
+
+    @Test
+    public void nonPositiveTargetRendersEverything() {
+        FrameDecimator decimator = new FrameDecimator(0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(decimator.shouldRender(i * 1000L));
+        }
+    }
+}
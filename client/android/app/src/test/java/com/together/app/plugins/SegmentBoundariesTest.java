@@ -0,0 +1,152 @@
+package com.together.app.plugins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SegmentBoundariesTest {
+
+    /** Sample in decode order. */
+    private static final class Sample {
+        final long ptsUs;
+        final boolean sync;
+
+        Sample(long ptsUs, boolean sync) {
+            this.ptsUs = ptsUs;
+            this.sync = sync;
+        }
+    }
+
+    private static final long FRAME_US = 33_333;
+
+    /**
+     * Open-GOP stream with one GOP per second, in decode order: I, then two leading
+     * B-frames shown before the I, then P / B pairs. Starts at the GOP at 0, which has
+     * no leading pictures.
+     */
+    private static List<Sample> openGopStream(int gops) {
+        List<Sample> samples = new ArrayList<>();
+        for (int g = 0; g < gops; g++) {
+            long gopUs = g * 30 * FRAME_US;
+            samples.add(new Sample(gopUs, true));
+            if (g > 0) {
+                samples.add(new Sample(gopUs - 2 * FRAME_US, false));
+                samples.add(new Sample(gopUs - FRAME_US, false));
+            }
+            for (int i = 1; i + 1 < 28; i += 2) {
+                samples.add(new Sample(gopUs + (i + 1) * FRAME_US, false));
+                samples.add(new Sample(gopUs + i * FRAME_US, false));
+            }
+        }
+        return samples;
+    }
+
+    /** Feeds samples from the sync sample at or before {@code seekUs} and returns the fed ones. */
+    private static List<Sample> feed(List<Sample> stream, SegmentBoundaries boundaries) {
+        long seekUs = boundaries.seekTimeUs();
+        int from = 0;
+        for (int i = 0; i < stream.size(); i++) {
+            if (stream.get(i).sync && stream.get(i).ptsUs <= seekUs) {
+                from = i;
+            }
+        }
+        List<Sample> fed = new ArrayList<>();
+        for (int i = from; i < stream.size(); i++) {
+            Sample sample = stream.get(i);
+            if (!boundaries.shouldFeed(sample.ptsUs, sample.sync)) {
+                break;
+            }
+            fed.add(sample);
+        }
+        return fed;
+    }
+
+    private static boolean containsPts(List<Sample> samples, long ptsUs) {
+        for (Sample sample : samples) {
+            if (sample.ptsUs == ptsUs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void firstSegmentSeeksToStart() {
+        assertEquals(0, new SegmentBoundaries(Long.MIN_VALUE, 1_000_000).seekTimeUs());
+        assertEquals(0, new SegmentBoundaries(0, 1_000_000).seekTimeUs());
+    }
+
+    @Test
+    public void laterSegmentsSeekBeforeTheirSplitPoint() {
+        assertEquals(999_999, new SegmentBoundaries(1_000_000, 2_000_000).seekTimeUs());
+    }
+
+    @Test
+    public void keepsFramesInsideRangeOnly() {
+        SegmentBoundaries boundaries = new SegmentBoundaries(1_000_000, 2_000_000);
+        assertFalse(boundaries.keep(999_999));
+        assertTrue(boundaries.keep(1_000_000));
+        assertTrue(boundaries.keep(1_999_999));
+        assertFalse(boundaries.keep(2_000_000));
+    }
+
+    @Test
+    public void openEndedRangesKeepEverything() {
+        SegmentBoundaries boundaries = new SegmentBoundaries(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(boundaries.keep(0));
+        assertTrue(boundaries.keep(Long.MAX_VALUE - 1));
+        assertTrue(boundaries.shouldFeed(Long.MAX_VALUE - 1, false));
+        assertFalse(boundaries.shouldFeed(-1, false));
+    }
+
+    @Test
+    public void feedsLeadingPicturesOfNextSplitPoint() {
+        List<Sample> stream = openGopStream(3);
+        long splitUs = 30 * FRAME_US;
+        List<Sample> fed = feed(stream, new SegmentBoundaries(Long.MIN_VALUE, splitUs));
+
+        // The split point's sync sample and both leading B-frames shown before it
+        assertTrue(containsPts(fed, splitUs));
+        assertTrue(containsPts(fed, splitUs - FRAME_US));
+        assertTrue(containsPts(fed, splitUs - 2 * FRAME_US));
+        // but no trailing picture of the next GOP
+        assertFalse(containsPts(fed, splitUs + 2 * FRAME_US));
+    }
+
+    @Test
+    public void decodesPreviousGopForLeadingPictures() {
+        List<Sample> stream = openGopStream(3);
+        long splitUs = 30 * FRAME_US;
+        List<Sample> fed = feed(stream, new SegmentBoundaries(splitUs, 2 * splitUs));
+
+        // Decoding starts at the GOP before the split point, which the leading B-frames reference
+        assertEquals(0, fed.get(0).ptsUs);
+        assertTrue(fed.get(0).sync);
+    }
+
+    @Test
+    public void adjacentSegmentsKeepEveryFrameExactlyOnce() {
+        List<Sample> stream = openGopStream(4);
+        long splitUs = 30 * FRAME_US;
+        long[] starts = {Long.MIN_VALUE, splitUs, 3 * splitUs};
+
+        List<Long> kept = new ArrayList<>();
+        for (int s = 0; s < starts.length; s++) {
+            long endUs = s + 1 < starts.length ? starts[s + 1] : Long.MAX_VALUE;
+            SegmentBoundaries boundaries = new SegmentBoundaries(starts[s], endUs);
+            for (Sample sample : feed(stream, boundaries)) {
+                if (boundaries.keep(sample.ptsUs)) {
+                    kept.add(sample.ptsUs);
+                }
+            }
+        }
+
+        assertEquals(stream.size(), kept.size());
+        for (Sample sample : stream) {
+            assertTrue("missing " + sample.ptsUs, kept.contains(sample.ptsUs));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.together.app.plugins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Runs {@link StreamingUploader} against a local MockWebServer.
+ */
+public class StreamingUploaderTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public MockWebServer server = new MockWebServer();
+
+    private static MockResponse ok() {
+        return new MockResponse().setResponseCode(200).setBody("{\"success\":true}");
+    }
+
+    private static MockResponse status(int code) {
+        return new MockResponse().setResponseCode(code).setBody("fail");
+    }
+
+    private File createFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        File file = temp.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void put_streamsWholeFileAndReportsProgress() throws Exception {
+        File file = createFile(200_000);
+        AtomicLong lastSent = new AtomicLong();
+        server.enqueue(ok());
+
+        StreamingUploader.Response response = new StreamingUploader(1, 0).put(
+            server.url("/presigned").toString(), StreamingUploader.fileSource(file), "video/mp4",
+            Collections.singletonMap("X-Test", "1"), (sent, total) -> lastSent.set(sent));
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals(200, response.status);
+        assertEquals("PUT", request.getMethod());
+        assertArrayEquals(readFile(file), request.getBody().readByteArray());
+        assertEquals("video/mp4", request.getHeader("Content-Type"));
+        assertEquals("1", request.getHeader("X-Test"));
+        assertEquals(file.length(), lastSent.get());
+    }
+
+    @Test
+    public void put_retriesRetryableStatus() throws Exception {
+        File file = createFile(1024);
+        server.enqueue(status(503));
+        server.enqueue(status(500));
+        server.enqueue(ok());
+
+        StreamingUploader.Response response = new StreamingUploader(3, 1).put(
+            server.url("/flaky").toString(), StreamingUploader.fileSource(file), "video/mp4", null, null);
+
+        assertEquals(200, response.status);
+        assertEquals(3, server.getRequestCount());
+        server.takeRequest();
+        server.takeRequest();
+        assertArrayEquals(readFile(file), server.takeRequest().getBody().readByteArray());
+    }
+
+    @Test
+    public void put_failsFastOnClientError() throws Exception {
+        File file = createFile(1024);
+        server.enqueue(status(403));
+
+        try {
+            new StreamingUploader(3, 1).put(
+                server.url("/forbidden").toString(), StreamingUploader.fileSource(file), "video/mp4", null, null);
+            fail("Expected UploadException");
+        } catch (StreamingUploader.UploadException e) {
+            assertEquals(403, e.status);
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void postMultipart_sendsFieldsAndFile() throws Exception {
+        File file = createFile(5000);
+        Map<String, String> fields = Collections.singletonMap("folder", "videos");
+        server.enqueue(ok());
+
+        new StreamingUploader(1, 0).postMultipart(
+            server.url("/api/upload").toString(), StreamingUploader.fileSource(file), "file", "clip.mp4",
+            "video/mp4", fields, null, null);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        String contentType = request.getHeader("Content-Type");
+        assertTrue(contentType.startsWith("multipart/form-data; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+        byte[] body = request.getBody().readByteArray();
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("name=\"folder\"\r\n\r\nvideos\r\n"));
+        assertTrue(text.contains("name=\"file\"; filename=\"clip.mp4\"\r\nContent-Type: video/mp4\r\n\r\n"));
+        assertTrue(text.endsWith("\r\n--" + boundary + "--\r\n"));
+
+        int fileStart = text.indexOf("Content-Type: video/mp4\r\n\r\n") + "Content-Type: video/mp4\r\n\r\n".length();
+        byte[] filePart = Arrays.copyOfRange(body, fileStart, fileStart + (int) file.length());
+        assertArrayEquals(readFile(file), filePart);
+    }
+}
@@ -1,6 +1,8 @@
 import React from 'react';
 import ReactDOM from 'react-dom/client';
 import App from './App';
+import { Platform } from './shared/utils/platform';
+import StartupTrace from './shared/plugins/StartupTrace';
 
 const rootElement = document.getElementById('root');
 if (!rootElement) {
@@ -13,3 +15,12 @@ root.render(
     <App />
   </React.StrictMode>
 );
+
+// Record the first painted frame for native cold-start tracing. The time is taken
+// in JS so the bridge hop is not counted as paint time.
+if (Platform.isAndroid()) {
+  requestAnimationFrame(() => {
+    const epochMs = performance.timeOrigin + performance.now();
+    StartupTrace.mark({ name: 'first_web_paint', epochMs }).catch(() => undefined);
+  });
+}
@@ -18,7 +18,7 @@ import { photoResultToFile } from '../shared/utils/photoFile';
 import { countWords } from '../shared/utils/wordCount';
 import { mapWithConcurrency } from '../shared/utils/concurrency';
 import { compressImage } from '../shared/utils/imageCompress';
-import { compressVideo } from '../shared/utils/videoCompress';
+import { compressVideo, compressVideoToPath, releaseCompressedVideo } from '../shared/utils/videoCompress';
 import { VideoPreview } from '../shared/components/display/VideoPreview';
 import { SwipeableImageContainer } from '../shared/components/display/SwipeableImageContainer';
 
@@ -330,40 +330,52 @@ const EditMemory: React.FC = () => {
         | { ok: false };
 
       const outcomes = await mapWithConcurrency(files, concurrency, async (file, index): Promise<UploadOutcome> => {
-        const maxAttempts = 2;
         const isVideo = file.type.startsWith('video/');
-        // Compress media before upload
-        const fileToUpload = isVideo
-          ? await compressVideo(file)
-          : await compressImage(file);
-        for (let attempt = 1; attempt <= maxAttempts; attempt += 1) {
-          try {
-            perFileProgress[index] = 0;
-            updateProgressUi();
-            const folder = isVideo ? 'videos' : 'images';
-            const result = await uploadApi.uploadDirect(fileToUpload, folder, (progress) => {
-              perFileProgress[index] = progress;
+        // Compress media before upload; on Android videos stay on disk and are streamed natively
+        const nativeVideo = isVideo ? await compressVideoToPath(file) : null;
+        // uploadNative retries the presign request and StreamingUploader the transfer; do not resend the file on top of that
+        const maxAttempts = nativeVideo ? 1 : 2;
+        const fileToUpload = nativeVideo
+          ? null
+          : isVideo
+            ? await compressVideo(file)
+            : await compressImage(file);
+        try {
+          for (let attempt = 1; attempt <= maxAttempts; attempt += 1) {
+            try {
+              perFileProgress[index] = 0;
               updateProgressUi();
-            });
-            perFileProgress[index] = 100;
-            completedCount += 1;
-            updateProgressUi(true);
-            return { ok: true, url: result.url };
-          } catch {
-            if (attempt < maxAttempts) {
-              await new Promise((resolve) => setTimeout(resolve, 300));
-              continue;
+              const folder = isVideo ? 'videos' : 'images';
+              const onProgress = (progress: number) => {
+                perFileProgress[index] = progress;
+                updateProgressUi();
+              };
+              const result = nativeVideo
+                ? await uploadApi.uploadNative(nativeVideo.path, file.name, nativeVideo.mimeType, folder, onProgress)
+                : await uploadApi.uploadDirect(fileToUpload!, folder, onProgress);
+              perFileProgress[index] = 100;
+              completedCount += 1;
+              updateProgressUi(true);
+              return { ok: true, url: result.url };
+            } catch {
+              if (attempt < maxAttempts) {
+                await new Promise((resolve) => setTimeout(resolve, 300));
+                continue;
+              }
+              perFileProgress[index] = 100;
+              completedCount += 1;
+              updateProgressUi(true);
+              return { ok: false };
             }
-            perFileProgress[index] = 100;
-            completedCount += 1;
-            updateProgressUi(true);
-            return { ok: false };
           }
+          perFileProgress[index] = 100;
+          completedCount += 1;
+          updateProgressUi(true);
+          return { ok: false };
+        } finally {
+          // Uploaded or given up on: the compressed copy is no longer needed
+          releaseCompressedVideo(nativeVideo);
         }
-        perFileProgress[index] = 100;
-        completedCount += 1;
-        updateProgressUi(true);
-        return { ok: false };
       });
 
       const uploadedUrls = outcomes.filter((o): o is Extract<UploadOutcome, { ok: true }> => o.ok).map((o) => o.url);
@@ -25,7 +25,7 @@ import { useFixedTopBar } from '../shared/hooks/useFixedTopBar';
 import { Haptics } from '../shared/utils/haptics';
 import { mapWithConcurrency } from '../shared/utils/concurrency';
 import { compressImage } from '../shared/utils/imageCompress';
-import { compressVideo } from '../shared/utils/videoCompress';
+import { compressVideo, compressVideoToPath, releaseCompressedVideo } from '../shared/utils/videoCompress';
 
 // 高德地图安全配置
 window._AMapSecurityConfig = {
@@ -433,54 +433,68 @@ const NewMemory: React.FC = () => {
       const outcomes = await mapWithConcurrency(files, concurrency, async (file, index): Promise<UploadOutcome> => {
         const isVideo = file.type.startsWith('video/');
         const folder = isVideo ? 'videos' : 'images';
-        const maxAttempts = 2;
 
-        // Compress media before upload
-        const fileToUpload = isVideo
-          ? await compressVideo(file)
-          : await compressImage(file);
-
-        const debug = `File: ${file.name}, Size: ${formatFileSize(fileToUpload.size)}, Type: ${fileToUpload.type || 'unknown'}`;
-
-        for (let attempt = 1; attempt <= maxAttempts; attempt += 1) {
-          try {
-            perFileProgress[index] = 0;
-            updateProgressUi();
-
-            const result = await uploadApi.uploadDirect(fileToUpload, folder, (progress) => {
-              perFileProgress[index] = progress;
+        // Compress media before upload; on Android videos stay on disk and are streamed natively
+        const nativeVideo = isVideo ? await compressVideoToPath(file) : null;
+        // uploadNative retries the presign request and StreamingUploader the transfer; do not resend the file on top of that
+        const maxAttempts = nativeVideo ? 1 : 2;
+        const fileToUpload = nativeVideo
+          ? null
+          : isVideo
+            ? await compressVideo(file)
+            : await compressImage(file);
+
+        const debug = fileToUpload
+          ? `File: ${file.name}, Size: ${formatFileSize(fileToUpload.size)}, Type: ${fileToUpload.type || 'unknown'}`
+          : `File: ${file.name}, Native: ${nativeVideo?.path}, Type: ${nativeVideo?.mimeType}`;
+
+        try {
+          for (let attempt = 1; attempt <= maxAttempts; attempt += 1) {
+            try {
+              perFileProgress[index] = 0;
               updateProgressUi();
-            });
-
-            perFileProgress[index] = 100;
-            completedCount += 1;
-            updateProgressUi(true);
 
-            return {
-              ok: true,
-              item: {
-                url: result.url,
-                type: result.type,
-              },
-            };
-          } catch (err) {
-            const error = err instanceof Error ? err : new Error('Upload failed');
-            if (attempt < maxAttempts) {
-              await new Promise((resolve) => setTimeout(resolve, 300));
-              continue;
-            }
+              const onProgress = (progress: number) => {
+                perFileProgress[index] = progress;
+                updateProgressUi();
+              };
+              const result = nativeVideo
+                ? await uploadApi.uploadNative(nativeVideo.path, file.name, nativeVideo.mimeType, folder, onProgress)
+                : await uploadApi.uploadDirect(fileToUpload!, folder, onProgress);
+
+              perFileProgress[index] = 100;
+              completedCount += 1;
+              updateProgressUi(true);
+
+              return {
+                ok: true,
+                item: {
+                  url: result.url,
+                  type: result.type,
+                },
+              };
+            } catch (err) {
+              const error = err instanceof Error ? err : new Error('Upload failed');
+              if (attempt < maxAttempts) {
+                await new Promise((resolve) => setTimeout(resolve, 300));
+                continue;
+              }
 
-            // Mark this file as "stalled" so overall progress doesn't look stuck at 0%.
-            perFileProgress[index] = 100;
-            completedCount += 1;
-            updateProgressUi(true);
+              // Mark this file as "stalled" so overall progress doesn't look stuck at 0%.
+              perFileProgress[index] = 100;
+              completedCount += 1;
+              updateProgressUi(true);
 
-            return { ok: false, error, debug };
+              return { ok: false, error, debug };
+            }
           }
-        }
 
-        // Unreachable, but keeps TS happy.
-        return { ok: false, error: new Error('Upload failed'), debug };
+          // Unreachable, but keeps TS happy.
+          return { ok: false, error: new Error('Upload failed'), debug };
+        } finally {
+          // Uploaded or given up on: the compressed copy is no longer needed
+          releaseCompressedVideo(nativeVideo);
+        }
       });
 
       const successItems = outcomes.filter((o): o is Extract<UploadOutcome, { ok: true }> => o.ok).map((o) => o.item);
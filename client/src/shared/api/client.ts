@@ -1,4 +1,5 @@
 import type { ApiResponse } from '../types';
+import Uploader from '../plugins/Uploader';
 
 
 const DEFAULT_API_BASE = `${window.location.protocol}//${window.location.hostname}:3005/api`;
@@ -727,6 +728,52 @@ export const uploadApi = {
     };
   },
 
+  // Stream a local file to R2 from native code (Android); the bytes never enter the JS heap.
+  // Transient upload failures are retried natively and the presign request is retried here,
+  // so callers should not add their own retry loop.
+  uploadNative: async (
+    nativePath: string,
+    filename: string,
+    mimeType: string,
+    folder: string = 'uploads',
+    onProgress?: (progress: number) => void
+  ): Promise<{ url: string; filename: string; type: 'image' | 'gif' | 'video' }> => {
+    const presign = () => uploadApi.getPresignedUrl(filename, folder, mimeType || undefined);
+    const { uploadUrl, publicUrl, contentType } = await presign().catch(async () => {
+      await new Promise((resolve) => setTimeout(resolve, 300));
+      return presign();
+    });
+
+    const uploadId = `${Date.now()}-${Math.random().toString(36).slice(2)}`;
+    const progressHandle = onProgress
+      ? await Uploader.addListener('uploadProgress', (event) => {
+          if (event.uploadId === uploadId) onProgress(event.progress);
+        })
+      : null;
+
+    try {
+      await Uploader.upload({
+        path: nativePath,
+        url: uploadUrl,
+        method: 'PUT',
+        contentType: contentType || mimeType || 'application/octet-stream',
+        uploadId,
+      });
+    } finally {
+      await progressHandle?.remove();
+    }
+
+    const isVideo = mimeType.startsWith('video/');
+    const isGif = mimeType === 'image/gif';
+    const type: 'image' | 'gif' | 'video' = isVideo ? 'video' : isGif ? 'gif' : 'image';
+
+    return {
+      url: normalizeUploadUrl(publicUrl),
+      filename,
+      type,
+    };
+  },
+
   // Delete file from R2
   deleteFile: async (url: string): Promise<void> => {
     const token = localStorage.getItem('auth_token');
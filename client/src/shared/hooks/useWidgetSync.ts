@@ -7,14 +7,15 @@ import { useSpace } from '@/shared/context/SpaceContext';
 /**
  * 同步小部件数据的 Hook
  * 当用户信息或空间信息变化时，自动更新 Android 小部件
+ * 头像由原生侧按 URL 下载并预渲染，URL 不变时不会重复处理
  */
 export function useWidgetSync() {
   const { user } = useAuth();
   const { space, partner } = useSpace();
 
   const syncWidgetData = useCallback(async () => {
-    // 只在 Android 原生环境下执行
-    if (!Platform.isNative()) {
+    // 小部件只存在于 Android
+    if (!Platform.isAndroid()) {
       return;
     }
 
@@ -51,7 +52,7 @@ export function useWidgetSync() {
 
   // 暴露手动刷新方法
   const refreshWidget = useCallback(async () => {
-    if (!Platform.isNative()) {
+    if (!Platform.isAndroid()) {
       return;
     }
 
@@ -0,0 +1,25 @@
+import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+
+export interface HeartbeatRecord {
+  /** 服务端通知 ID */
+  notificationId: string | null;
+  title: string;
+  /** 收到时间 (ms) */
+  receivedAt: number;
+}
+
+export interface HeartbeatPlugin {
+  /** 原生层记录的最近心跳（从旧到新，最多 20 条） */
+  getRecent(): Promise<{ heartbeats: HeartbeatRecord[] }>;
+  /** 清除心跳记录和通知 */
+  clear(): Promise<void>;
+  addListener(
+    eventName: 'heartbeatReceived',
+    listenerFunc: (heartbeat: HeartbeatRecord) => void
+  ): Promise<PluginListenerHandle>;
+}
+
+const Heartbeat = registerPlugin<HeartbeatPlugin>('Heartbeat');
+
+export { Heartbeat };
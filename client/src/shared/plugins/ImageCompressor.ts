@@ -0,0 +1,40 @@
+import { registerPlugin } from '@capacitor/core';
+
+export interface ImageCompressOptions {
+  /** 图片路径列表 (content:// 或 file://)，多选时在原生线程池中并行处理 */
+  paths: string[];
+  /** 最长边像素上限，默认 1920 */
+  maxDimension?: number;
+  /** 输出格式，默认 jpeg */
+  format?: 'webp' | 'jpeg';
+  /** 编码质量 1-100，默认 85 */
+  quality?: number;
+  /** 目标文件大小上限 (bytes)，超出时逐步降低质量；0 表示不限制 */
+  maxBytes?: number;
+}
+
+export interface ImageCompressItem {
+  /** 输入路径 */
+  originalPath: string;
+  /** 输出路径；未压缩 (如 GIF) 时与输入相同 */
+  path?: string;
+  compressed?: boolean;
+  size?: number;
+  width?: number;
+  height?: number;
+  mimeType?: string;
+  /** 单张图片失败时的错误信息 */
+  error?: string;
+}
+
+export interface ImageCompressorPlugin {
+  compress(options: ImageCompressOptions): Promise<{ results: ImageCompressItem[] }>;
+  /** 删除指定的压缩结果文件，只会删除插件输出目录下的文件 */
+  release(options: { paths: string[] }): Promise<{ deleted: number }>;
+  /** 删除压缩生成的缓存文件 */
+  clearCache(): Promise<void>;
+}
+
+const ImageCompressor = registerPlugin<ImageCompressorPlugin>('ImageCompressor');
+
+export default ImageCompressor;
@@ -0,0 +1,23 @@
+import { registerPlugin } from '@capacitor/core';
+
+export interface StartupMark {
+  /** process_start | application_create_start | application_create_end | activity_create | plugins_registered | bridge_ready | first_web_paint */
+  name: string;
+  /** 相对进程启动的毫秒数 */
+  sinceProcessStartMs: number;
+  /** SystemClock.elapsedRealtime() */
+  elapsedRealtimeMs: number;
+}
+
+export interface StartupTracePlugin {
+  /**
+   * 记录打点；同名打点只保留第一次
+   * epochMs 为事件发生时的墙上时间（performance.timeOrigin + performance.now()），省略时按原生收到调用的时刻记录
+   */
+  mark(options: { name: string; epochMs?: number }): Promise<void>;
+  getMarks(): Promise<{ marks: StartupMark[] }>;
+}
+
+const StartupTrace = registerPlugin<StartupTracePlugin>('StartupTrace');
+
+export default StartupTrace;
@@ -0,0 +1,48 @@
+import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+
+export interface UploadOptions {
+  /** 本地文件路径 (file:// / content:// / 绝对路径) */
+  path: string;
+  /** 上传地址：预签名 URL 或 /api/upload */
+  url: string;
+  /** PUT 以文件作为请求体；POST 以 multipart/form-data 上传，默认 PUT */
+  method?: 'PUT' | 'POST';
+  contentType?: string;
+  headers?: Record<string, string>;
+  /** multipart 文件字段名，默认 file */
+  fieldName?: string;
+  /** multipart 文件名 */
+  fileName?: string;
+  /** multipart 额外字段，如 folder */
+  fields?: Record<string, string>;
+  /** 用于区分进度事件，默认为 path */
+  uploadId?: string;
+}
+
+export interface UploadResult {
+  status: number;
+  /** 服务端响应体 */
+  body: string;
+  etag?: string;
+}
+
+export interface UploadProgress {
+  uploadId: string;
+  bytesSent: number;
+  totalBytes: number;
+  /** 0-100 */
+  progress: number;
+}
+
+export interface UploaderPlugin {
+  upload(options: UploadOptions): Promise<UploadResult>;
+  addListener(
+    eventName: 'uploadProgress',
+    listenerFunc: (progress: UploadProgress) => void
+  ): Promise<PluginListenerHandle>;
+}
+
+const Uploader = registerPlugin<UploaderPlugin>('Uploader');
+
+export default Uploader;
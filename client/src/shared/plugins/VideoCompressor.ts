@@ -1,23 +1,89 @@
 import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
 
 export interface CompressOptions {
   /** 视频文件路径 (content:// 或 file://) */
   path: string;
   /** 压缩质量: low (640x360), medium (1280x720), high (1920x1080) */
   quality?: 'low' | 'medium' | 'high';
+  /** 任务优先级: low 任务在过热、省电或低电量时暂停 */
+  priority?: 'normal' | 'low';
+  /** 同时输出的预览版本质量，与主视频共用一次解码 */
+  previewQuality?: 'low' | 'medium' | 'high';
 }
 
+export type CompressJobState = 'queued' | 'running' | 'succeeded' | 'failed';
+
 export interface CompressResult {
+  /** 压缩任务 ID */
+  jobId: string;
+  /** 任务状态 */
+  state: CompressJobState;
   /** 压缩后的文件路径 */
   path: string;
   /** 压缩后文件大小 (bytes) */
   size: number;
   /** 视频时长 (秒) */
   duration: number;
+  /** 预览版本 (指定 previewQuality 时) */
+  preview?: {
+    path: string;
+    size: number;
+  };
+  /** 失败原因 (state 为 failed 时) */
+  error?: string;
+  /** 最近一次限速的原因 */
+  throttleReason?: string;
+}
+
+export interface CompressProgress {
+  jobId: string;
+  /** 0-99 */
+  progress: number;
+}
+
+export interface ThrottleState {
+  level: 'normal' | 'reduced' | 'severe';
+  /** thermal_severe | thermal_moderate | thermal_light | power_save | battery_low | none */
+  reason: string;
+  /** 输出帧率上限 */
+  frameRate: number;
+  /** 编解码器每秒处理帧数上限，0 表示不限 */
+  operatingRate: number;
+  pauseLowPriority: boolean;
+}
+
+export interface ThrottleEvent extends ThrottleState {
+  jobId: string;
+  /** 低优先级任务是否因此暂停 */
+  paused: boolean;
 }
 
 export interface VideoCompressorPlugin {
+  /**
+   * 将任务写入磁盘队列并在后台执行，完成后 resolve（进程存活时）
+   * 进程被杀前未交付的相同输入、相同参数的任务会被复用，不会重新转码
+   */
   compress(options: CompressOptions): Promise<CompressResult>;
+  /** 列出队列中的所有任务，用于重新连接后取回结果 */
+  getJobs(): Promise<{ jobs: CompressResult[] }>;
+  /** 确认并移除已完成的任务，deleteOutput 为 true 时同时删除压缩后的文件 */
+  removeJob(options: { jobId: string; deleteOutput?: boolean }): Promise<void>;
+  /** 当前温控 / 电量限速决策 */
+  getThrottleState(): Promise<ThrottleState>;
+  addListener(
+    eventName: 'compressionProgress',
+    listenerFunc: (progress: CompressProgress) => void
+  ): Promise<PluginListenerHandle>;
+  /** 进程重启后完成的任务会在注册监听时补发 */
+  addListener(
+    eventName: 'compressionComplete',
+    listenerFunc: (result: CompressResult) => void
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: 'compressionThrottle',
+    listenerFunc: (event: ThrottleEvent) => void
+  ): Promise<PluginListenerHandle>;
 }
 
 const VideoCompressor = registerPlugin<VideoCompressorPlugin>('VideoCompressor');
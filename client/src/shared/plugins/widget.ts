@@ -4,12 +4,23 @@ export interface WidgetData {
   anniversaryDate: string;
   user1Name: string;
   user2Name: string;
+  /** 头像 URL，原生侧下载并预渲染，URL 不变时复用已保存的头像 */
   user1Avatar?: string;
   user2Avatar?: string;
+  /** 头像本地文件路径，提供时优先于 URL */
+  user1AvatarPath?: string;
+  user2AvatarPath?: string;
+}
+
+export interface UpdateWidgetDataResult {
+  success: boolean;
+  /** 是否已保存本地头像，false 时小部件通过 URL 下载 */
+  user1AvatarCached?: boolean;
+  user2AvatarCached?: boolean;
 }
 
 export interface WidgetPlugin {
-  updateWidgetData(data: WidgetData): Promise<{ success: boolean }>;
+  updateWidgetData(data: WidgetData): Promise<UpdateWidgetDataResult>;
   refreshWidget(): Promise<{ success: boolean }>;
   clearWidgetData(): Promise<{ success: boolean }>;
 }
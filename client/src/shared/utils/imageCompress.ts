@@ -5,15 +5,65 @@
  * and re-encodes as JPEG at JPEG_QUALITY. This typically reduces
  * a 4-12 MB phone photo to 300-500 KB — a 70-80% reduction.
  *
+ * On Android, photos with a native path are decoded and re-encoded as WebP
+ * by the ImageCompressor plugin instead of on the WebView's canvas.
+ *
  * Skipped for: GIFs (animated), videos, already-small files.
  */
 
+import { Capacitor } from '@capacitor/core';
+import { Platform } from './platform';
+import ImageCompressor from '../plugins/ImageCompressor';
+import type { FileWithNativePath } from './photoFile';
+
 const MAX_DIMENSION = 1920;
 const JPEG_QUALITY = 0.85;
 /** Files smaller than this are returned as-is (no point compressing). */
 const MIN_COMPRESS_SIZE = 200 * 1024; // 200 KB
 /** Files larger than this but within MAX_DIMENSION are still re-encoded to save bandwidth. */
 const RE_ENCODE_THRESHOLD = 2 * 1024 * 1024; // 2 MB
+const NATIVE_QUALITY = 85;
+
+/**
+ * Compress through the native plugin. Returns null when the native path
+ * is unavailable or fails, so the caller can fall back to the canvas path.
+ */
+async function compressImageNative(file: File): Promise<File | null> {
+  const nativePath = (file as FileWithNativePath)._nativePath;
+  if (!nativePath || !Platform.isAndroid()) return null;
+
+  try {
+    const { results } = await ImageCompressor.compress({
+      paths: [nativePath],
+      maxDimension: MAX_DIMENSION,
+      format: 'webp',
+      quality: NATIVE_QUALITY,
+    });
+    const result = results[0];
+    if (!result?.compressed || !result.path || result.size === undefined) return null;
+
+    // The output is read into a Blob below, so the cached file is never needed afterwards
+    const outputPath = result.path;
+    try {
+      if (result.size >= file.size) return file;
+
+      const response = await fetch(Capacitor.convertFileSrc(outputPath));
+      const blob = await response.blob();
+      const compressedName = file.name.replace(/\.[^.]+$/, '.webp');
+      return new File([blob], compressedName, {
+        type: 'image/webp',
+        lastModified: Date.now(),
+      });
+    } finally {
+      ImageCompressor.release({ paths: [outputPath] }).catch(() => undefined);
+    }
+  } catch (error) {
+    if (import.meta.env.DEV) {
+      console.warn('[ImageCompress] Native compression failed, using canvas:', error);
+    }
+    return null;
+  }
+}
 
 /**
  * Compress a single image File.
@@ -29,6 +79,9 @@ export async function compressImage(file: File): Promise<File> {
   // Skip already-small files
   if (file.size < MIN_COMPRESS_SIZE) return file;
 
+  const nativeResult = await compressImageNative(file);
+  if (nativeResult) return nativeResult;
+
   try {
     // Decode image off the main thread where supported
     const bitmap = await createImageBitmap(file);
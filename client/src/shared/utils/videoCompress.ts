@@ -13,6 +13,54 @@ import type { FileWithNativePath } from './photoFile';
 /** Minimum file size to compress (5MB) */
 const MIN_COMPRESS_SIZE = 5 * 1024 * 1024;
 
+/** A video ready for native upload; jobId is set when the file is a compression output */
+export interface NativeVideo {
+  path: string;
+  mimeType: string;
+  jobId?: string;
+}
+
+/**
+ * Drop a compression job and delete its output once the file has been uploaded
+ * or abandoned. No-op for original (uncompressed) files.
+ */
+export function releaseCompressedVideo(video: { jobId?: string } | null): void {
+  if (!video?.jobId) return;
+  VideoCompressor.removeJob({ jobId: video.jobId, deleteOutput: true }).catch(() => undefined);
+}
+
+/**
+ * Compress a video on Android and return the native path of the file to upload,
+ * without reading the result back into JS. Falls back to the original native
+ * path when the video is small or compression fails.
+ * Returns null when no native path is available (iOS, Web).
+ * Pass the result to releaseCompressedVideo() once it is uploaded or abandoned.
+ */
+export async function compressVideoToPath(file: File): Promise<NativeVideo | null> {
+  const nativePath = (file as FileWithNativePath)._nativePath;
+  if (!file.type.startsWith('video/') || !Platform.isAndroid() || !nativePath) {
+    return null;
+  }
+
+  const original = { path: nativePath, mimeType: file.type };
+  if (file.size < MIN_COMPRESS_SIZE) {
+    return original;
+  }
+
+  try {
+    const result = await VideoCompressor.compress({
+      path: nativePath,
+      quality: 'medium',
+    });
+    return { path: result.path, mimeType: 'video/mp4', jobId: result.jobId };
+  } catch (error) {
+    if (import.meta.env.DEV) {
+      console.error('[VideoCompress] Compression failed, using original:', error);
+    }
+    return original;
+  }
+}
+
 /**
  * Compress a video file on Android.
  * Returns the original file unchanged on other platforms or if no native path available.
@@ -45,6 +93,7 @@ export async function compressVideo(file: File): Promise<File> {
     return file;
   }
 
+  let jobId: string | undefined;
   try {
     if (import.meta.env.DEV) {
       console.log('[VideoCompress] Starting compression:', {
@@ -59,6 +108,7 @@ export async function compressVideo(file: File): Promise<File> {
       path: nativePath,
       quality: 'medium',
     });
+    jobId = result.jobId;
 
     if (import.meta.env.DEV) {
       console.log('[VideoCompress] Compression result:', result);
@@ -91,5 +141,8 @@ export async function compressVideo(file: File): Promise<File> {
     }
     // Fall back to original file on error
     return file;
+  } finally {
+    // The result is held in JS (or abandoned); drop the job and its output file
+    releaseCompressedVideo({ jobId });
   }
 }
@@ -140,6 +140,17 @@ export async function sendPushNotification(
         sound: 'default',
       },
     },
+    // Heartbeats also go out as a custom message: while the app process is alive its
+    // native receiver coalesces them without booting the WebView. The notification
+    // above still covers killed apps via vendor channels; the app dedupes the pair
+    // by notificationId.
+    ...(shouldVibrate && {
+      message: {
+        msg_content: alertText,
+        title: title,
+        extras: data || {},
+      },
+    }),
     options: {
       time_to_live: 86400, // 24 hours
       apns_production: process.env.NODE_ENV === 'production',